@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures JSON serialization and parsing of the fully configured agent that
+ * {@link AgentSample} creates, and compares the pretty-printed output the samples print with
+ * compact output and with {@link StreamingJsonWriter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AgentJsonBenchmark {
+
+  private final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private Agent agent;
+  private String agentJson;
+  private StreamingJsonWriter jsonlWriter;
+
+  @Setup
+  public void setUp() throws IOException {
+    agent = AgentSample.newTestAgent().setName("brands/benchmark/agents/benchmark");
+    agent.setFactory(jsonFactory);
+    agentJson = jsonFactory.toString(agent);
+
+    OutputStream discard = new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) {
+      }
+    };
+    jsonlWriter = new StreamingJsonWriter(discard, StreamingJsonWriter.Format.JSONL, null, true);
+  }
+
+  @Benchmark
+  public String toPrettyString() throws IOException {
+    return agent.toPrettyString();
+  }
+
+  @Benchmark
+  public String toCompactString() throws IOException {
+    return jsonFactory.toString(agent);
+  }
+
+  @Benchmark
+  public byte[] toByteArray() throws IOException {
+    return jsonFactory.toByteArray(agent);
+  }
+
+  @Benchmark
+  public long streamJsonl() throws IOException {
+    jsonlWriter.write(agent);
+    return jsonlWriter.getCount();
+  }
+
+  @Benchmark
+  public Agent parse() throws IOException {
+    return jsonFactory.fromString(agentJson, Agent.class);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds service account credentials that never go to the network, so the benchmarks measure
+ * client code rather than token requests.
+ */
+final class BenchmarkCredentials {
+
+  private BenchmarkCredentials() {
+  }
+
+  /**
+   * Returns a credential with a throwaway key and an access token that stays valid for a day.
+   */
+  static GoogleCredential newOfflineCredential() throws NoSuchAlgorithmException {
+    KeyPairGenerator keys = KeyPairGenerator.getInstance("RSA");
+    keys.initialize(2048);
+
+    GoogleCredential credential = new GoogleCredential.Builder()
+        .setTransport(BusinessCommunicationsClientFactory.getTransport())
+        .setJsonFactory(JacksonFactory.getDefaultInstance())
+        .setServiceAccountId("benchmark@benchmark.iam.gserviceaccount.com")
+        .setServiceAccountProjectId("benchmark")
+        .setServiceAccountPrivateKey(keys.generateKeyPair().getPrivate())
+        .setServiceAccountScopes(Collections.singletonList(
+            "https://www.googleapis.com/auth/businesscommunications"))
+        .build();
+    credential.setAccessToken("benchmark-token");
+    credential.setExpirationTimeMilliseconds(
+        System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+
+    return credential;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what it costs to set up a client: the builder returned by
+ * {@link BusinessCommunicationsApi#getBusinessCommunicationsBuilder()} once credentials are
+ * loaded, {@code builder.build()}, and the per-call transport and client the samples used to
+ * create before clients were shared.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientBuilderBenchmark {
+
+  private static final String ROOT_URL = "https://localhost/";
+
+  private GoogleCredential credential;
+  private BusinessCommunications.Builder builder;
+
+  @Setup
+  public void setUp() throws Exception {
+    credential = BenchmarkCredentials.newOfflineCredential();
+    builder = BusinessCommunicationsApi.newBuilder(credential, ROOT_URL);
+  }
+
+  @Benchmark
+  public BusinessCommunications.Builder getBuilder() {
+    return BusinessCommunicationsApi.newBuilder(credential, ROOT_URL);
+  }
+
+  @Benchmark
+  public BusinessCommunications build() {
+    return builder.build();
+  }
+
+  @Benchmark
+  public BusinessCommunications newTransportAndClient() throws Exception {
+    return new BusinessCommunications
+        .Builder(GoogleNetHttpTransport.newTrustedTransport(),
+            JacksonFactory.getDefaultInstance(), credential)
+        .setApplicationName(credential.getServiceAccountProjectId())
+        .setRootUrl(ROOT_URL)
+        .build();
+  }
+}
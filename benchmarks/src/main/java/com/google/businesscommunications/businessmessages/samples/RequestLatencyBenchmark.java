@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures end-to-end request latency through the shared client and all of its request layers
+ * against an in-process {@link LocalStubServer} that answers immediately. The client-side rate
+ * limit is switched off so it does not dominate the result.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestLatencyBenchmark {
+
+  private LocalStubServer brandServer;
+  private LocalStubServer agentServer;
+  private BusinessCommunications brandClient;
+  private BusinessCommunications agentClient;
+  private Agent agent;
+
+  @Setup
+  public void setUp() throws Exception {
+    for (MethodFamily family : MethodFamily.values()) {
+      RequestThrottler.getInstance().setRequestsPerSecond(family, 0);
+    }
+
+    agent = AgentSample.newTestAgent();
+
+    brandServer = new LocalStubServer(0);
+    agentServer = new LocalStubServer(0, JacksonFactory.getDefaultInstance()
+        .toByteArray(AgentSample.newTestAgent().setName("brands/benchmark/agents/benchmark")));
+
+    brandClient = BusinessCommunicationsClientFactory.newClient(
+        BenchmarkCredentials.newOfflineCredential(), "benchmark", brandServer.getRootUrl());
+    agentClient = BusinessCommunicationsClientFactory.newClient(
+        BenchmarkCredentials.newOfflineCredential(), "benchmark", agentServer.getRootUrl());
+  }
+
+  @TearDown
+  public void tearDown() {
+    brandServer.close();
+    agentServer.close();
+  }
+
+  @Benchmark
+  public Brand getBrand() throws IOException {
+    return brandClient.brands().get("brands/benchmark").execute();
+  }
+
+  @Benchmark
+  public Agent createAgent() throws IOException {
+    return agentClient.brands().agents().create("brands/benchmark", agent).execute();
+  }
+}
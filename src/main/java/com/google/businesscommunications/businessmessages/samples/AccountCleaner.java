@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Empty;
+import com.google.api.services.businesscommunications.v1.model.ListAgentsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListBrandsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListLocationsResponse;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds leftover test resources and deletes them: locations first, then agents, then brands.
+ * <p>
+ * A brand or agent matches when its display name starts with the given prefix. Everything in a
+ * matching brand matches, as does every location of a matching agent. With the unverified-only
+ * filter, agents and locations that are verified are kept. A resource is only deleted when
+ * everything that depends on it is deleted too, so an agent with a location that is kept, or a
+ * brand with any agent or location that is kept, is kept as well. The API does not expose when
+ * a resource was created, so resources cannot be filtered by age.
+ * <p>
+ * Brands are scanned in parallel, at most as many at once as there are workers. Deletes are
+ * sent as multipart batches through {@link RequestBatcher}, where every item still counts
+ * against its collection's rate limit and is retried by the retry policy. Each phase finishes
+ * before the next starts, and a failed delete keeps the resources that depend on it.
+ * <p>
+ * Every delete is recorded in a {@link JobJournal}, keyed by resource name, and a resource that
+ * was already gone counts as deleted. A later run with the same journal skips the deleted
+ * resources and retries the rest, so an interrupted cleanup can be resumed
+ * even while the list operations still return recently deleted resources.
+ */
+public class AccountCleaner {
+
+  private static final Logger logger = Logger.getLogger(AccountCleaner.class.getName());
+
+  private static final int DEFAULT_WORKERS = 8;
+
+  private static final String VERIFIED = "VERIFICATION_STATE_VERIFIED";
+
+  private final BusinessCommunications client;
+  private final String prefix;
+  private final boolean unverifiedOnly;
+  private final Set<String> done;
+
+  // Resources to delete, and what each location and agent belongs to
+  private final Set<String> locations = ConcurrentHashMap.newKeySet();
+  private final Set<String> agents = ConcurrentHashMap.newKeySet();
+  private final Set<String> brands = ConcurrentHashMap.newKeySet();
+  private final Map<String, String> agentOfLocation = new ConcurrentHashMap<>();
+  private final Map<String, String> brandOf = new ConcurrentHashMap<>();
+
+  // Plan lines of the three phases
+  private final List<List<String>> descriptions = Collections.unmodifiableList(Arrays.asList(
+      Collections.synchronizedList(new ArrayList<>()),
+      Collections.synchronizedList(new ArrayList<>()),
+      Collections.synchronizedList(new ArrayList<>())));
+  private final AtomicInteger kept = new AtomicInteger();
+  private final AtomicInteger deleted = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  /**
+   * @param client The Business Communications client to use.
+   * @param prefix The display name prefix of the brands and agents to delete.
+   * @param unverifiedOnly Whether verified agents and locations are kept.
+   * @param done Names of resources deleted by earlier runs, which are skipped.
+   */
+  public AccountCleaner(BusinessCommunications client, String prefix, boolean unverifiedOnly,
+      Set<String> done) {
+    this.client = client;
+    this.prefix = prefix;
+    this.unverifiedOnly = unverifiedOnly;
+    this.done = done;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      logger.severe("Usage: mvn exec:java -Dexec.args=\"<DISPLAY_NAME_PREFIX> <JOURNAL_FILE> "
+          + "[APPLY] [WORKERS] [UNVERIFIED_ONLY]\"");
+
+      System.exit(-1);
+    }
+
+    String prefix = args[0];
+    Path journalFile = Paths.get(args[1]);
+    boolean apply = args.length > 2 && args[2].equals("APPLY");
+    int workers = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_WORKERS;
+    boolean unverifiedOnly = args.length > 4 && args[4].equals("UNVERIFIED_ONLY");
+
+    try (JobJournal journal = JobJournal.open(journalFile)) {
+      Set<String> done = journal.getDoneKeys();
+      AccountCleaner cleaner = new AccountCleaner(
+          BusinessCommunicationsApi.getBusinessCommunications(), prefix, unverifiedOnly, done);
+
+      View.header("Cleanup plan for display names starting with \"" + prefix + "\"");
+      cleaner.plan(workers);
+      cleaner.printPlan();
+      if (!done.isEmpty()) {
+        System.out.println(done.size() + " resources deleted earlier are skipped.");
+      }
+
+      if (apply) {
+        View.header("Deleting");
+        cleaner.apply(journal);
+        System.out.println(cleaner.summary());
+        System.out.print(journal.summary());
+        System.out.print(BulkRunner.summaryOfRequests());
+      } else {
+        System.out.println("Dry run only. Pass APPLY as the third argument to delete.");
+      }
+    }
+  }
+
+  /**
+   * Scans every brand in parallel and works out which resources can be deleted.
+   *
+   * @param workers The number of brands scanned at once.
+   */
+  public void plan(int workers) throws IOException, InterruptedException {
+    ExecutorService executor = TaskExecutors.newExecutor(workers, "cleaner-%d");
+    // Bounds the scans in progress on virtual threads too, where the executor does not
+    Semaphore permits = new Semaphore(workers);
+    try {
+      List<Future<?>> scans = new ArrayList<>();
+      try (PagedIterator<ListBrandsResponse, Brand> brandPages
+          = Pagination.brands(client, Constants.LIST_PAGE_SIZE)) {
+        while (brandPages.hasNext()) {
+          Brand brand = brandPages.next();
+          if (!done.contains(brand.getName())) {
+            permits.acquire();
+            scans.add(executor.submit(() -> {
+              try {
+                scanBrand(brand);
+                return null;
+              } finally {
+                permits.release();
+              }
+            }));
+          }
+        }
+      }
+
+      for (Future<?> scan : scans) {
+        try {
+          scan.get();
+        } catch (ExecutionException e) {
+          throw new IOException("Could not scan a brand", e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Prints the resources to delete, in the order they will be deleted.
+   */
+  public void printPlan() {
+    for (List<String> phase : descriptions) {
+      Collections.sort(phase);
+      for (String description : phase) {
+        System.out.println(description);
+      }
+    }
+
+    System.out.println();
+    System.out.printf("%d locations, %d agents and %d brands to delete, %d matching resources "
+        + "kept.%n", locations.size(), agents.size(), brands.size(), kept.get());
+  }
+
+  /**
+   * Deletes the planned resources, locations first, then agents, then brands, recording every
+   * delete in the journal.
+   *
+   * @param journal The journal of the cleanup.
+   */
+  public void apply(JobJournal journal) {
+    Set<String> failedLocations = deleteAll(locations,
+        name -> client.brands().locations().delete(name), journal);
+    for (String location : failedLocations) {
+      keep(agentOfLocation.get(location));
+      keep(brandOf.get(location));
+    }
+
+    Set<String> failedAgents = deleteAll(agents,
+        name -> client.brands().agents().delete(name), journal);
+    for (String agent : failedAgents) {
+      keep(brandOf.get(agent));
+    }
+
+    deleteAll(brands, name -> client.brands().delete(name), journal);
+  }
+
+  /**
+   * Returns a one-line summary of the deletes.
+   */
+  public String summary() {
+    return String.format("Deleted %d resources, %d failed.", deleted.get(), failed.get());
+  }
+
+  private interface DeleteRequestFactory {
+
+    AbstractGoogleJsonClientRequest<Empty> create(String name)
+        throws IOException;
+  }
+
+  private void scanBrand(Brand brand) throws IOException {
+    String brandName = brand.getName();
+    boolean brandMatches = matches(brand.getDisplayName());
+    boolean keepBrand = !brandMatches;
+
+    Set<String> matchingAgents = new HashSet<>();
+    Set<String> keptAgents = new HashSet<>();
+    try (PagedIterator<ListAgentsResponse, Agent> agentPages
+        = Pagination.agents(client, brandName, Constants.LIST_PAGE_SIZE)) {
+      while (agentPages.hasNext()) {
+        Agent agent = agentPages.next();
+        if (done.contains(agent.getName())) {
+          continue;
+        }
+
+        if (!brandMatches && !matches(agent.getDisplayName())) {
+          keptAgents.add(agent.getName());
+        } else if (unverifiedOnly && isAgentVerified(agent.getName())) {
+          kept.incrementAndGet();
+          keptAgents.add(agent.getName());
+        } else {
+          matchingAgents.add(agent.getName());
+        }
+      }
+    }
+
+    Set<String> matchingLocations = new HashSet<>();
+    try (PagedIterator<ListLocationsResponse, Location> locationPages
+        = Pagination.locations(client, brandName, Constants.LIST_PAGE_SIZE)) {
+      while (locationPages.hasNext()) {
+        Location location = locationPages.next();
+        if (done.contains(location.getName())) {
+          continue;
+        }
+
+        boolean locationMatches = brandMatches || matchingAgents.contains(location.getAgent());
+        if (locationMatches && unverifiedOnly && isLocationVerified(location.getName())) {
+          kept.incrementAndGet();
+          locationMatches = false;
+        }
+
+        if (locationMatches) {
+          matchingLocations.add(location.getName());
+          agentOfLocation.put(location.getName(), location.getAgent());
+          brandOf.put(location.getName(), brandName);
+          descriptions.get(0).add("- delete " + location.getName()
+              + " (place " + location.getPlaceId() + ")");
+        } else {
+          // An agent cannot be deleted while a location still uses it
+          if (matchingAgents.remove(location.getAgent())) {
+            kept.incrementAndGet();
+            keptAgents.add(location.getAgent());
+          }
+          keepBrand = true;
+        }
+      }
+    }
+
+    for (String agent : matchingAgents) {
+      brandOf.put(agent, brandName);
+      descriptions.get(1).add("- delete " + agent);
+    }
+    if (!keptAgents.isEmpty()) {
+      keepBrand = true;
+    }
+
+    locations.addAll(matchingLocations);
+    agents.addAll(matchingAgents);
+
+    if (!keepBrand) {
+      brands.add(brandName);
+      descriptions.get(2).add("- delete " + brandName + " (" + brand.getDisplayName() + ")");
+    } else if (brandMatches) {
+      kept.incrementAndGet();
+    }
+  }
+
+  private boolean matches(String displayName) {
+    return displayName != null && displayName.startsWith(prefix);
+  }
+
+  private boolean isAgentVerified(String agentName) throws IOException {
+    try {
+      return VERIFIED.equals(client.brands().agents()
+          .getVerification(agentName + "/verification").execute().getVerificationState());
+    } catch (GoogleJsonResponseException e) {
+      if (e.getStatusCode() == 404) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private boolean isLocationVerified(String locationName) throws IOException {
+    try {
+      return VERIFIED.equals(client.brands().locations()
+          .getVerification(locationName + "/verification").execute().getVerificationState());
+    } catch (GoogleJsonResponseException e) {
+      if (e.getStatusCode() == 404) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Takes an agent or brand out of the plan after something it depends on could not be
+   * deleted. Keeping an agent keeps its brand too.
+   */
+  private void keep(String name) {
+    if (name == null) {
+      return;
+    }
+
+    if (agents.remove(name) || brands.remove(name)) {
+      kept.incrementAndGet();
+    }
+    String brandName = brandOf.get(name);
+    if (brandName != null && brands.remove(brandName)) {
+      kept.incrementAndGet();
+    }
+  }
+
+  /**
+   * Deletes the resources in batches and waits for all of them.
+   *
+   * @return The names of the resources that could not be deleted.
+   */
+  private Set<String> deleteAll(Set<String> names, DeleteRequestFactory requests,
+      JobJournal journal) {
+    Set<String> failedNames = ConcurrentHashMap.newKeySet();
+    List<CompletableFuture<?>> deletes = new ArrayList<>();
+
+    try (RequestBatcher batcher = new RequestBatcher(client)) {
+      for (String name : names) {
+        CompletableFuture<Empty> delete;
+        journal.startedIdempotent(name);
+        try {
+          delete = batcher.queue(requests.create(name));
+        } catch (IOException e) {
+          delete = new CompletableFuture<>();
+          delete.completeExceptionally(e);
+        }
+
+        deletes.add(delete.handle((empty, error) -> {
+          Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+          boolean gone = cause instanceof GoogleJsonResponseException
+              && ((GoogleJsonResponseException) cause).getStatusCode() == 404;
+          if (error == null || gone) {
+            deleted.incrementAndGet();
+            journal.done(name, null);
+            System.out.println("Deleted " + name);
+          } else {
+            failed.incrementAndGet();
+            failedNames.add(name);
+            journal.failed(name, String.valueOf(cause));
+            logger.log(Level.WARNING, "Could not delete " + name, cause);
+          }
+          return null;
+        }));
+      }
+
+      batcher.flush();
+      CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    return failedNames;
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rolls out an agent change, such as a new logo URL or conversational settings, to many agents
+ * in canary waves.
+ * <p>
+ * The change file holds a partial Agent resource with only the fields to change, for example
+ * <pre>
+ * {"businessMessagesAgent": {"logoUrl": "https://example.com/logo.png"}}
+ * </pre>
+ * Each agent is read and patched through {@link UpdateMasks#patchAgent}, so the update mask
+ * covers only the fields that actually differ, entries of {@code conversationalSettings} are
+ * replaced per locale, and agents that already match are skipped.
+ * <p>
+ * The agents file lists one agent name per line. Waves are cumulative percentages of the list,
+ * e.g. 1,10,100: the first wave covers the first 1% of agents (at least one), the second the
+ * agents up to 10%, and the last the rest. The agents of a wave are patched in parallel, with
+ * the number in progress bounded by a permit pool of one permit per worker. After
+ * each wave the error rate is checked, and the rollout stops if it exceeds the limit. Within a
+ * wave no further agents are started once the failures alone exceed the limit for the wave.
+ * The outcome for every agent started is written as one JSON line to the output file.
+ */
+public class AgentRollout {
+
+  private static final Logger logger = Logger.getLogger(AgentRollout.class.getName());
+
+  private static final String DEFAULT_WAVES = "1,10,100";
+  private static final int DEFAULT_WORKERS = 16;
+  private static final double DEFAULT_MAX_ERROR_RATE = 0.05;
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private final BusinessCommunications client;
+  private final Agent change;
+  private final int workers;
+  private final double maxErrorRate;
+
+  private final AtomicInteger patched = new AtomicInteger();
+  private final AtomicInteger unchanged = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicInteger notStarted = new AtomicInteger();
+  private int completedWaves;
+  private boolean aborted;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      logger.severe("Usage: mvn exec:java -Dexec.args=\"<AGENTS_FILE> <CHANGE_FILE> "
+          + "<OUTPUT_FILE> [WAVES] [WORKERS] [MAX_ERROR_RATE]\"");
+
+      System.exit(-1);
+    }
+
+    List<String> agentNames = readAgentNames(args[0]);
+    Agent change;
+    try (Reader reader = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+      change = jsonFactory.fromReader(reader, Agent.class);
+    }
+    String outputFile = args[2];
+    int[] waves = parseWaves(args.length > 3 ? args[3] : DEFAULT_WAVES);
+    int workers = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_WORKERS;
+    double maxErrorRate = args.length > 5
+        ? Double.parseDouble(args[5]) : DEFAULT_MAX_ERROR_RATE;
+
+    View.header("Rolling out " + args[1] + " to " + agentNames.size() + " agents in waves of "
+        + (args.length > 3 ? args[3] : DEFAULT_WAVES) + "%");
+
+    BusinessCommunications client = BusinessCommunicationsApi.getBusinessCommunications();
+    AgentRollout rollout = new AgentRollout(client, change, workers, maxErrorRate);
+
+    long start = System.nanoTime();
+    rollout.run(agentNames, waves, outputFile);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    System.out.printf("%s in %d ms%n", rollout.summary(), elapsedMillis);
+    System.out.print(UpdateMasks.summary());
+    System.out.print(BulkRunner.summaryOfRequests());
+
+    if (rollout.isAborted()) {
+      System.exit(-1);
+    }
+  }
+
+  /**
+   * @param client The Business Communications client to use.
+   * @param change A partial agent with the fields to change. It must not be modified while the
+   * rollout runs.
+   * @param workers The maximum number of agents patched at once.
+   * @param maxErrorRate The largest fraction of failed agents in a wave before the rollout
+   * stops, e.g. 0.05.
+   */
+  public AgentRollout(BusinessCommunications client, Agent change, int workers,
+      double maxErrorRate) {
+    this.client = client;
+    this.change = change;
+    this.workers = workers;
+    this.maxErrorRate = maxErrorRate;
+  }
+
+  /**
+   * Rolls the change out wave by wave, stopping after a wave whose error rate is too high.
+   *
+   * @param agentNames The agents to change, in rollout order.
+   * @param waves Cumulative percentages of the agents covered after each wave, ending in 100.
+   * @param outputFile The file the JSONL result of every started agent is written to.
+   * @return True if every wave completed, false if the rollout stopped.
+   */
+  public boolean run(List<String> agentNames, int[] waves, String outputFile)
+      throws IOException, InterruptedException {
+    try (BulkRunner runner = new BulkRunner(workers, "rollout-%d", outputFile)) {
+      int from = 0;
+      for (int wave = 0; wave < waves.length && from < agentNames.size(); wave++) {
+        int to = (int) Math.min(agentNames.size(),
+            Math.max(from + 1L, (long) Math.ceil(agentNames.size() * waves[wave] / 100.0)));
+        List<String> waveAgents = agentNames.subList(from, to);
+
+        int failures = runWave(runner, waveAgents, wave + 1);
+        double errorRate = failures / (double) waveAgents.size();
+        System.out.printf("Wave %d: %d agents, %d failed (%.1f%%)%n",
+            wave + 1, waveAgents.size(), failures, errorRate * 100);
+
+        completedWaves = wave + 1;
+        from = to;
+
+        if (errorRate > maxErrorRate) {
+          logger.severe(String.format(
+              "Error rate %.1f%% in wave %d is above %.1f%%, stopping the rollout with %d "
+                  + "agents left.", errorRate * 100, wave + 1, maxErrorRate * 100,
+              agentNames.size() - from));
+          aborted = true;
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+
+  /**
+   * Returns true if the rollout stopped because of errors.
+   */
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * Returns a one-line summary of the rollout.
+   */
+  public String summary() {
+    return String.format(
+        "%s after %d waves: %d agents patched, %d unchanged, %d failed, %d not started",
+        aborted ? "Stopped" : "Completed", completedWaves, patched.get(), unchanged.get(),
+        failed.get(), notStarted.get());
+  }
+
+  /**
+   * Patches the agents of one wave in parallel and returns the number that failed. Agents that
+   * were not started because the wave already failed too often count as failed.
+   */
+  private int runWave(BulkRunner runner, List<String> waveAgents, int wave)
+      throws InterruptedException {
+    int failureLimit = (int) Math.floor(waveAgents.size() * maxErrorRate);
+    AtomicInteger failures = new AtomicInteger();
+    AtomicBoolean tripped = new AtomicBoolean();
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (String agentName : waveAgents) {
+      futures.add(runner.submit(() -> {
+        if (tripped.get()) {
+          notStarted.incrementAndGet();
+          failures.incrementAndGet();
+          return;
+        }
+
+        GenericJson result = patchAgent(agentName, wave);
+        if ("FAILED".equals(result.get("status"))
+            && failures.incrementAndGet() > failureLimit) {
+          tripped.set(true);
+        }
+        runner.writeResult(result);
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
+        failures.incrementAndGet();
+      }
+    }
+
+    return failures.get();
+  }
+
+  private GenericJson patchAgent(String agentName, int wave) {
+    GenericJson result = new GenericJson();
+    result.set("agent", agentName);
+    result.set("wave", wave);
+
+    try {
+      Agent current = client.brands().agents().get(agentName).execute();
+      Agent updated = UpdateMasks.patchAgent(client, current, change);
+      ResourceCaches.AGENTS.put(updated);
+
+      if (updated == current) {
+        unchanged.incrementAndGet();
+        result.set("status", "UNCHANGED");
+      } else {
+        patched.incrementAndGet();
+        result.set("status", "PATCHED");
+      }
+    } catch (Exception e) {
+      logger.log(Level.FINE, Constants.EXCEPTION_WAS_THROWN, e);
+      failed.incrementAndGet();
+
+      result.set("status", "FAILED");
+      result.set("error", e.getMessage());
+    }
+
+    return result;
+  }
+
+  static List<String> readAgentNames(String agentsFile) throws IOException {
+    List<String> agentNames = new ArrayList<>();
+    for (String line : Files.readAllLines(Paths.get(agentsFile), StandardCharsets.UTF_8)) {
+      if (!line.trim().isEmpty()) {
+        agentNames.add(line.trim());
+      }
+    }
+
+    return agentNames;
+  }
+
+  static int[] parseWaves(String waves) {
+    String[] parts = waves.split(",");
+    int[] percentages = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      percentages[i] = Integer.parseInt(parts[i].trim());
+      if (percentages[i] <= 0 || percentages[i] > 100
+          || (i > 0 && percentages[i] <= percentages[i - 1])) {
+        throw new IllegalArgumentException(
+            "Waves must be increasing percentages up to 100: " + waves);
+      }
+    }
+    if (percentages[parts.length - 1] != 100) {
+      throw new IllegalArgumentException("The last wave must be 100: " + waves);
+    }
+
+    return percentages;
+  }
+}
@@ -21,7 +21,6 @@ import com.google.api.services.businesscommunications.v1.enums.OptionsValueListE
 import com.google.api.services.businesscommunications.v1.enums.CustomSurveyQuestionTypeValues;
 import com.google.api.services.businesscommunications.v1.model.*;
 
-import java.io.IOException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,7 +43,7 @@ public class AgentSample {
 
   private static final Logger logger = Logger.getLogger(BrandSample.class.getName());
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String[] args) {
     if (args.length < 1) {
@@ -74,23 +73,26 @@ public class AgentSample {
 
     View.header("Agent script for brand name: " + brandName);
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     // Create an agent
     View.header("Create Agent:");
-    Agent agent = createAgent(brandName);
+    Agent agent = View.requireResult(createAgent(brandName), "create the agent");
 
-    View.printBreak(5);
+    View.awaitCreated(5, agent.getName(),
+        name -> client.brands().agents().get(name).execute());
 
     // Get agent details
     View.header("Get Agent Details:");
-    agent = getAgent(agent.getName());
+    agent = View.requireResult(getAgent(agent.getName()), "get the agent");
+    System.out.print(ResourceCaches.AGENTS.summary());
 
     View.printBreak(3);
 
     // Update the agent
     View.header("Updating Agent Display Name:");
-    agent = updateAgentDisplayName(agent, "New Test Agent Name");
+    agent = View.requireResult(updateAgentDisplayName(agent, "New Test Agent Name"),
+        "update the agent display name");
 
     View.printBreak(3);
 
@@ -102,7 +104,7 @@ public class AgentSample {
 
     View.header("Updating Agent Welcome Message:");
     ConversationalSetting conversationalSetting = agent.getBusinessMessagesAgent()
-        .getConversationalSettings().get("en");
+        .getConversationalSettings().get("en").clone();
     conversationalSetting
         .setWelcomeMessage(new WelcomeMessage().setText("The updated welcome message!"));
     updateAgentConversationalSettings(agent, conversationalSetting);
@@ -111,19 +113,17 @@ public class AgentSample {
 
     View.header("Updating Agent Primary Interaction Available Hours:");
 
+    // Copy the primary agent interaction object so the original agent stays unchanged
+    SupportedAgentInteraction supportedAgentInteraction = agent.getBusinessMessagesAgent()
+        .getPrimaryAgentInteraction().clone();
+
     // Get the existing list of hours
-    List<Hours> existingHours = agent.getBusinessMessagesAgent().getPrimaryAgentInteraction()
-        .getBotRepresentative().getBotMessagingAvailability().getHours();
+    List<Hours> existingHours = supportedAgentInteraction.getBotRepresentative()
+        .getBotMessagingAvailability().getHours();
 
     // Changing the start time from 9am to 8am
     existingHours.get(0).setStartTime(new TimeOfDay().setHours(8));
 
-    // Update the primary agent interaction object
-    SupportedAgentInteraction supportedAgentInteraction = agent.getBusinessMessagesAgent()
-        .getPrimaryAgentInteraction();
-    supportedAgentInteraction.getBotRepresentative().getBotMessagingAvailability()
-        .setHours(existingHours);
-
     // Send the update to the API
     updateAgentPrimaryAgentInteraction(agent, supportedAgentInteraction);
 
@@ -210,137 +210,11 @@ public class AgentSample {
   private static Agent createAgent(String brandName) {
     Agent agent = null;
     try {
-      // Create a list of available hours to be used by the configured agent interaction types
-      // This is availability between 9am and 5pm in the PST timezone
-      // This is availability between 9am and 5pm in the PST timezone
-      List<Hours> hours = new ArrayList<Hours>() {{
-        add(new Hours()
-            .setStartDay(DayOfWeek.MONDAY.toString())
-            .setStartTime(new TimeOfDay().setHours(9).setMinutes(0))
-            .setEndDay(DayOfWeek.FRIDAY.toString())
-            .setEndTime(new TimeOfDay().setHours(17).setMinutes(0))
-            .setTimeZone("America/Los_Angeles"));
-      }};
-
-      // Create a list of supported agent interactions for the non-primary interaction types
-      List<SupportedAgentInteraction> additionalAgentInteractions
-          = new ArrayList<SupportedAgentInteraction>() {{
-        add(new SupportedAgentInteraction()
-            .setInteractionType(InteractionType.HUMAN.toString())
-            .setHumanRepresentative(new HumanRepresentative()
-                .setHumanMessagingAvailability(new MessagingAvailability()
-                    .setHours(hours))));
-      }};
-
-      // Create 5 conversation starters, including one that will redirect to a URL
-      // to be shown as part of the welcome message
-      List<ConversationStarters> conversationStarters = new ArrayList<ConversationStarters>() {{
-        add(new ConversationStarters().setSuggestion(new Suggestion()
-            .setReply(new SuggestedReply().setText("Chip #1").setPostbackData("chip_1"))));
-        add(new ConversationStarters().setSuggestion(new Suggestion()
-            .setReply(new SuggestedReply().setText("Chip #2").setPostbackData("chip_2"))));
-        add(new ConversationStarters().setSuggestion(new Suggestion()
-            .setReply(new SuggestedReply().setText("Chip #3").setPostbackData("chip_3"))));
-        add(new ConversationStarters().setSuggestion(new Suggestion()
-            .setReply(new SuggestedReply().setText("Chip #4").setPostbackData("chip_4"))));
-        add(new ConversationStarters().setSuggestion(new Suggestion()
-            .setAction(new SuggestedAction().setText("Chip #5").setPostbackData("chip_5")
-                .setOpenUrlAction(new OpenUrlAction().setUrl("https://www.google.com")))));
-      }};
-
-      // Create a map between the language code and the initial conversation settings
-      Map<String, ConversationalSetting> conversationalSettings = new HashMap<String, ConversationalSetting>() {{
-        put("en", new ConversationalSetting()
-            .setPrivacyPolicy(new PrivacyPolicy().setUrl("http://www.company.com/privacy"))
-            .setWelcomeMessage(new WelcomeMessage().setText("Welcome! How can I help?"))
-            .setOfflineMessage(new OfflineMessage().setText(
-                "We are currently offline, please leave a message and we will get back to you as soon as possible."))
-            .setConversationStarters(conversationStarters)
-            .setNegativeBotFeedbackMessage(new NegativeBotFeedbackMessage().setText("Thanks for the feedback! These help us improve the conversational experience to better help our customers.")));
-      }};
-
-      // Configuration options for launching on non-local entry points
-      NonLocalConfig nonLocalConfig = new NonLocalConfig()
-          // List of phone numbers for call deflection, values must be globally unique
-          // Generating a random phone number for demonstration purposes
-          // This should be replaced with a real brand phone number
-          .setCallDeflectionPhoneNumbers(new ArrayList<Phone>() {{
-            add(new Phone().setNumber(getRandomPhoneNumber()));
-          }})
-          // Contact information for the agent that displays with the messaging button
-          .setContactOption(new ContactOption().setOptions(new ArrayList<String>() {{
-            add(OptionsValueListEntryValues.WEB_CHAT.toString());
-            add(OptionsValueListEntryValues.FAQS.toString());
-          }}).setUrl("https://www.example-url.com"))
-          // Domains enabled for messaging within Search, values must be globally unique
-          // Generating a random URL for demonstration purposes
-          // This should be replaced with a real brand URL
-          .setEnabledDomains(new ArrayList<String>() {{
-            add(getRandomUrl());
-          }})
-          // Agent's phone number. Overrides the `phone` field for
-          // conversations started from non-local entry points
-          .setPhoneNumber(new Phone().setNumber("+12223335555"))
-          // Example is for launching in Canada and the USA
-          .setRegionCodes(new ArrayList<String>() {{
-            add("CA");
-            add("US");
-          }});
-
-      // Configure a CSAT survey with one template question and a custom question
-      SurveyConfig surveyConfig = new SurveyConfig()
-          .setCustomSurveys(new HashMap<String, CustomSurveyConfig>() {{
-            put("en", new CustomSurveyConfig()
-                .setCustomQuestions(new ArrayList<SurveyQuestion>() {{
-                  add(new SurveyQuestion()
-                      .setName("Question Name 1")
-                      .setQuestionContent("Did this agent do the best that it could?")
-                      .setQuestionType(CustomSurveyQuestionTypeValues.PARTNER_CUSTOM_QUESTION.toString())
-                      .setResponseOptions(new ArrayList<SurveyResponse>() {{
-                        add(new SurveyResponse()
-                            .setContent("👍")
-                            .setPostbackData("yes"));
-                        add(new SurveyResponse()
-                            .setContent("👎")
-                            .setPostbackData("no"));
-                        }})
-                  );
-                }})
-            );
-          }})
-          .setTemplateQuestionIds(new ArrayList<String>(){{
-            add("GOOGLE_DEFINED_ASSOCIATE_SATISFACTION");
-          }});
-
-      BusinessCommunications.Brands.Agents.Create request = builder
-          .build().brands().agents().create(brandName,
-              new Agent()
-                  .setDisplayName("Test Agent")
-                  .setBusinessMessagesAgent(new BusinessMessagesAgent()
-                      .setDefaultLocale("en")
-                      .setCustomAgentId("My custom agent ID") // Optional
-                      .setPhone(new Phone().setNumber("+12223334444")) // Optional
-                      .setLogoUrl("https://storage.googleapis.com/sample-logos/google-logo.png")
-                      .setNonLocalConfig(nonLocalConfig)
-                      .setEntryPointConfigs(new ArrayList<BusinessMessagesEntryPointConfig>() {{
-                        add(new BusinessMessagesEntryPointConfig()
-                            .setAllowedEntryPoint(
-                                BusinessMessagesEntryPointConfigValues.LOCATION.toString()));
-                        add(new BusinessMessagesEntryPointConfig()
-                            .setAllowedEntryPoint(
-                                BusinessMessagesEntryPointConfigValues.NON_LOCAL.toString()));
-                      }})
-                      .setPrimaryAgentInteraction(new SupportedAgentInteraction()
-                          .setInteractionType(InteractionType.BOT.toString())
-                          .setBotRepresentative(new BotRepresentative()
-                              .setBotMessagingAvailability(new MessagingAvailability()
-                                  .setHours(hours))))
-                      .setAdditionalAgentInteractions(additionalAgentInteractions) // Optional
-                      .setConversationalSettings(conversationalSettings)
-                      .setSurveyConfig(surveyConfig)
-                  ));
+      BusinessCommunications.Brands.Agents.Create request = client
+          .brands().agents().create(brandName, newTestAgent());
 
       agent = request.execute();
+      ResourceCaches.AGENTS.put(agent);
 
       System.out.println(agent.toPrettyString());
     } catch (Exception e) {
@@ -350,6 +224,142 @@ public class AgentSample {
     return agent;
   }
 
+  /**
+   * Builds the test agent created by {@link #createAgent(String)}, with hours, conversation
+   * starters, non-local settings, and a survey configured.
+   *
+   * @return A new agent that has not been sent to the API.
+   */
+  static Agent newTestAgent() {
+    // Create a list of available hours to be used by the configured agent interaction types
+    // This is availability between 9am and 5pm in the PST timezone
+    // This is availability between 9am and 5pm in the PST timezone
+    List<Hours> hours = new ArrayList<Hours>() {{
+      add(new Hours()
+          .setStartDay(DayOfWeek.MONDAY.toString())
+          .setStartTime(new TimeOfDay().setHours(9).setMinutes(0))
+          .setEndDay(DayOfWeek.FRIDAY.toString())
+          .setEndTime(new TimeOfDay().setHours(17).setMinutes(0))
+          .setTimeZone("America/Los_Angeles"));
+    }};
+
+    // Create a list of supported agent interactions for the non-primary interaction types
+    List<SupportedAgentInteraction> additionalAgentInteractions
+        = new ArrayList<SupportedAgentInteraction>() {{
+      add(new SupportedAgentInteraction()
+          .setInteractionType(InteractionType.HUMAN.toString())
+          .setHumanRepresentative(new HumanRepresentative()
+              .setHumanMessagingAvailability(new MessagingAvailability()
+                  .setHours(hours))));
+    }};
+
+    // Create 5 conversation starters, including one that will redirect to a URL
+    // to be shown as part of the welcome message
+    List<ConversationStarters> conversationStarters = new ArrayList<ConversationStarters>() {{
+      add(new ConversationStarters().setSuggestion(new Suggestion()
+          .setReply(new SuggestedReply().setText("Chip #1").setPostbackData("chip_1"))));
+      add(new ConversationStarters().setSuggestion(new Suggestion()
+          .setReply(new SuggestedReply().setText("Chip #2").setPostbackData("chip_2"))));
+      add(new ConversationStarters().setSuggestion(new Suggestion()
+          .setReply(new SuggestedReply().setText("Chip #3").setPostbackData("chip_3"))));
+      add(new ConversationStarters().setSuggestion(new Suggestion()
+          .setReply(new SuggestedReply().setText("Chip #4").setPostbackData("chip_4"))));
+      add(new ConversationStarters().setSuggestion(new Suggestion()
+          .setAction(new SuggestedAction().setText("Chip #5").setPostbackData("chip_5")
+              .setOpenUrlAction(new OpenUrlAction().setUrl("https://www.google.com")))));
+    }};
+
+    // Create a map between the language code and the initial conversation settings
+    Map<String, ConversationalSetting> conversationalSettings = new HashMap<String, ConversationalSetting>() {{
+      put("en", new ConversationalSetting()
+          .setPrivacyPolicy(new PrivacyPolicy().setUrl("http://www.company.com/privacy"))
+          .setWelcomeMessage(new WelcomeMessage().setText("Welcome! How can I help?"))
+          .setOfflineMessage(new OfflineMessage().setText(
+              "We are currently offline, please leave a message and we will get back to you as soon as possible."))
+          .setConversationStarters(conversationStarters)
+          .setNegativeBotFeedbackMessage(new NegativeBotFeedbackMessage().setText("Thanks for the feedback! These help us improve the conversational experience to better help our customers.")));
+    }};
+
+    // Configuration options for launching on non-local entry points
+    NonLocalConfig nonLocalConfig = new NonLocalConfig()
+        // List of phone numbers for call deflection, values must be globally unique
+        // Generating a random phone number for demonstration purposes
+        // This should be replaced with a real brand phone number
+        .setCallDeflectionPhoneNumbers(new ArrayList<Phone>() {{
+          add(new Phone().setNumber(getRandomPhoneNumber()));
+        }})
+        // Contact information for the agent that displays with the messaging button
+        .setContactOption(new ContactOption().setOptions(new ArrayList<String>() {{
+          add(OptionsValueListEntryValues.WEB_CHAT.toString());
+          add(OptionsValueListEntryValues.FAQS.toString());
+        }}).setUrl("https://www.example-url.com"))
+        // Domains enabled for messaging within Search, values must be globally unique
+        // Generating a random URL for demonstration purposes
+        // This should be replaced with a real brand URL
+        .setEnabledDomains(new ArrayList<String>() {{
+          add(getRandomUrl());
+        }})
+        // Agent's phone number. Overrides the `phone` field for
+        // conversations started from non-local entry points
+        .setPhoneNumber(new Phone().setNumber("+12223335555"))
+        // Example is for launching in Canada and the USA
+        .setRegionCodes(new ArrayList<String>() {{
+          add("CA");
+          add("US");
+        }});
+
+    // Configure a CSAT survey with one template question and a custom question
+    SurveyConfig surveyConfig = new SurveyConfig()
+        .setCustomSurveys(new HashMap<String, CustomSurveyConfig>() {{
+          put("en", new CustomSurveyConfig()
+              .setCustomQuestions(new ArrayList<SurveyQuestion>() {{
+                add(new SurveyQuestion()
+                    .setName("Question Name 1")
+                    .setQuestionContent("Did this agent do the best that it could?")
+                    .setQuestionType(CustomSurveyQuestionTypeValues.PARTNER_CUSTOM_QUESTION.toString())
+                    .setResponseOptions(new ArrayList<SurveyResponse>() {{
+                      add(new SurveyResponse()
+                          .setContent("👍")
+                          .setPostbackData("yes"));
+                      add(new SurveyResponse()
+                          .setContent("👎")
+                          .setPostbackData("no"));
+                      }})
+                );
+              }})
+          );
+        }})
+        .setTemplateQuestionIds(new ArrayList<String>(){{
+          add("GOOGLE_DEFINED_ASSOCIATE_SATISFACTION");
+        }});
+
+    return new Agent()
+        .setDisplayName("Test Agent")
+        .setBusinessMessagesAgent(new BusinessMessagesAgent()
+            .setDefaultLocale("en")
+            .setCustomAgentId("My custom agent ID") // Optional
+            .setPhone(new Phone().setNumber("+12223334444")) // Optional
+            .setLogoUrl("https://storage.googleapis.com/sample-logos/google-logo.png")
+            .setNonLocalConfig(nonLocalConfig)
+            .setEntryPointConfigs(new ArrayList<BusinessMessagesEntryPointConfig>() {{
+              add(new BusinessMessagesEntryPointConfig()
+                  .setAllowedEntryPoint(
+                      BusinessMessagesEntryPointConfigValues.LOCATION.toString()));
+              add(new BusinessMessagesEntryPointConfig()
+                  .setAllowedEntryPoint(
+                      BusinessMessagesEntryPointConfigValues.NON_LOCAL.toString()));
+            }})
+            .setPrimaryAgentInteraction(new SupportedAgentInteraction()
+                .setInteractionType(InteractionType.BOT.toString())
+                .setBotRepresentative(new BotRepresentative()
+                    .setBotMessagingAvailability(new MessagingAvailability()
+                        .setHours(hours))))
+            .setAdditionalAgentInteractions(additionalAgentInteractions) // Optional
+            .setConversationalSettings(conversationalSettings)
+            .setSurveyConfig(surveyConfig)
+        );
+  }
+
   /**
    * Updates the agent display name.
    *
@@ -359,9 +369,10 @@ public class AgentSample {
    */
   private static Agent updateAgentDisplayName(Agent agent, String displayName) {
     // Update the agent's display name
-    agent.setDisplayName(displayName);
+    Agent desiredAgent = agent.clone();
+    desiredAgent.setDisplayName(displayName);
 
-    return updateAgent(agent, "displayName");
+    return updateAgent(agent, desiredAgent);
   }
 
   /**
@@ -373,9 +384,10 @@ public class AgentSample {
    */
   private static Agent updateAgentLogo(Agent agent, String logoUrl) {
     // Update the agent's logo
-    agent.getBusinessMessagesAgent().setLogoUrl(logoUrl);
+    Agent desiredAgent = agent.clone();
+    desiredAgent.getBusinessMessagesAgent().setLogoUrl(logoUrl);
 
-    return updateAgent(agent, "businessMessagesAgent.logoUrl");
+    return updateAgent(agent, desiredAgent);
   }
 
   /**
@@ -389,12 +401,13 @@ public class AgentSample {
   private static Agent updateAgentConversationalSettings(Agent agent,
       ConversationalSetting conversationalSetting) {
     // Set the new conversational settings within the agent object
-    agent.getBusinessMessagesAgent()
+    Agent desiredAgent = agent.clone();
+    desiredAgent.getBusinessMessagesAgent()
         .setConversationalSettings(new HashMap<String, ConversationalSetting>() {{
           put("en", conversationalSetting);
         }});
 
-    return updateAgent(agent, "businessMessagesAgent.conversationalSettings.en");
+    return updateAgent(agent, desiredAgent);
   }
 
   /**
@@ -407,9 +420,10 @@ public class AgentSample {
   private static Agent updateAgentPrimaryAgentInteraction(Agent agent,
       SupportedAgentInteraction supportedAgentInteraction) {
     // Set the new primary interaction within the agent object
-    agent.getBusinessMessagesAgent().setPrimaryAgentInteraction(supportedAgentInteraction);
+    Agent desiredAgent = agent.clone();
+    desiredAgent.getBusinessMessagesAgent().setPrimaryAgentInteraction(supportedAgentInteraction);
 
-    return updateAgent(agent, "businessMessagesAgent.primaryAgentInteraction");
+    return updateAgent(agent, desiredAgent);
   }
 
   /**
@@ -421,29 +435,25 @@ public class AgentSample {
    */
   private static Agent updateAgentSurveyConfig(Agent agent, SurveyConfig surveyConfig) {
     // Set the new survey config within the agent object
-    agent.getBusinessMessagesAgent().setSurveyConfig(surveyConfig);
+    Agent desiredAgent = agent.clone();
+    desiredAgent.getBusinessMessagesAgent().setSurveyConfig(surveyConfig);
 
-    return updateAgent(agent, "businessMessagesAgent.surveyConfig");
+    return updateAgent(agent, desiredAgent);
   }
 
   /**
-   * Updates the saved agent with the passed in agent object for the fields specified in the update
-   * mask.
+   * Updates the saved agent to match the desired agent. Only the fields that differ are sent,
+   * with a matching update mask, and no request is made if nothing changed.
    *
-   * @param agent The agent that needs to be updated.
-   * @param updateMask A comma-separated list of fully qualified names of fields that are to be
-   * included in the update.
+   * @param agent The agent as it currently is.
+   * @param desiredAgent A copy of the agent with the changes applied.
    * @return The updated agent object.
    */
-  private static Agent updateAgent(Agent agent, String updateMask) {
+  private static Agent updateAgent(Agent agent, Agent desiredAgent) {
     Agent updatedAgent = null;
     try {
-      BusinessCommunications.Brands.Agents.Patch request = builder
-          .build().brands().agents().patch(agent.getName(), agent);
-
-      request.setUpdateMask(updateMask);
-
-      updatedAgent = request.execute();
+      updatedAgent = UpdateMasks.patchAgent(client, agent, desiredAgent);
+      ResourceCaches.AGENTS.put(updatedAgent);
 
       System.out.println(updatedAgent.toPrettyString());
     } catch (Exception e) {
@@ -454,7 +464,8 @@ public class AgentSample {
   }
 
   /**
-   * Based on the agent name, looks up the agent details.
+   * Based on the agent name, looks up the agent details. The agent is served from the
+   * local cache when it was read or written recently, unless {@code bc.cache.bypass} is set.
    *
    * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
    * format.
@@ -463,10 +474,8 @@ public class AgentSample {
   private static Agent getAgent(String agentName) {
     Agent agent = null;
     try {
-      BusinessCommunications.Brands.Agents.Get request = builder
-          .build().brands().agents().get(agentName);
-
-      agent = request.execute();
+      agent = ResourceCaches.AGENTS.get(agentName,
+          name -> client.brands().agents().get(name).execute());
 
       System.out.println(agent.toPrettyString());
     } catch (Exception e) {
@@ -477,23 +486,18 @@ public class AgentSample {
   }
 
   /**
-   * Lists all agents for the given brand.
+   * Lists all agents for the given brand, following page tokens until every agent has been
+   * printed.
    *
    * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
    */
   private static void listAgents(String brandName) {
-    try {
-      BusinessCommunications.Brands.Agents.List request
-          = builder.build().brands().agents().list(brandName);
-
-      List<Agent> agents = request.execute().getAgents();
-      agents.stream().forEach(agent -> {
-        try {
-          System.out.println(agent.toPrettyString());
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      });
+    try (PagedIterator<ListAgentsResponse, Agent> agents
+        = Pagination.agents(client, brandName, Constants.LIST_PAGE_SIZE);
+        StreamingJsonWriter writer = StreamingJsonWriter.toStandardOutput()) {
+      while (agents.hasNext()) {
+        writer.write(agents.next());
+      }
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
@@ -507,21 +511,22 @@ public class AgentSample {
    */
   private static void deleteAgent(String agentName) {
     try {
-      BusinessCommunications.Brands.Agents.Delete request = builder.build().brands().agents()
+      BusinessCommunications.Brands.Agents.Delete request = client.brands().agents()
           .delete(agentName);
 
       System.out.println(request.execute());
+      ResourceCaches.AGENTS.invalidate(agentName);
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
   }
 
-  private static String getRandomPhoneNumber() {
+  static String getRandomPhoneNumber() {
     long randomDigits = (long) Math.floor(Math.random() * 9_000_000_000L) + 1_000_000_000L;
     return "+1" + randomDigits;
   }
 
-  private static String getRandomUrl() {
+  static String getRandomUrl() {
     int leftLimit = 'a';
     int rightLimit = 'z';
     int targetLength = 10;
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.ClassInfo;
+import com.google.api.client.util.Data;
+import com.google.api.client.util.FieldInfo;
+import com.google.api.client.util.Types;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Phone;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * An agent template that is parsed once and instantiated many times with per-agent overrides.
+ * <p>
+ * An instance is a copy-on-write view of the template: only the objects on the path to an
+ * overridden field are copied, and every other sub-object, such as conversation starters, hours
+ * or the survey configuration, is shared with the template and all other instances. Instances
+ * are only read, when they are serialized for the create request, so the sharing is safe across
+ * threads as long as neither the template nor an instance is modified afterwards.
+ * <p>
+ * Overrides are keyed by dotted field paths such as {@code businessMessagesAgent.logoUrl}. A
+ * value replaces the field as a whole and is converted to the field's type, so an object value
+ * can override a nested object. Paths cannot reach into lists; override the whole list instead.
+ * <p>
+ * A template can also compute overrides of its own for every instance, applied before the
+ * caller's, for fields whose values must differ between agents.
+ */
+public final class AgentTemplate {
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private final Agent template;
+
+  // Computes the overrides of each instance, or null for none
+  private final Supplier<Map<String, Object>> instanceOverrides;
+
+  /**
+   * @param template The agent every instance is based on. It must not be modified afterwards.
+   */
+  public AgentTemplate(Agent template) {
+    this(template, null);
+  }
+
+  private AgentTemplate(Agent template, Supplier<Map<String, Object>> instanceOverrides) {
+    this.template = template;
+    this.instanceOverrides = instanceOverrides;
+  }
+
+  /**
+   * Parses a template from a JSON file in the format of the API's Agent resource.
+   */
+  public static AgentTemplate fromFile(Path file) throws IOException {
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return new AgentTemplate(jsonFactory.fromReader(reader, Agent.class));
+    }
+  }
+
+  /**
+   * Returns a template of the agent that {@link AgentSample} creates. The sample's call
+   * deflection phone number and enabled domain must be globally unique, so every instance gets
+   * new random ones.
+   */
+  public static AgentTemplate fromSampleAgent() throws IOException {
+    // The round trip replaces the sample's anonymous collection classes with plain ones
+    return new AgentTemplate(
+        jsonFactory.fromString(jsonFactory.toString(AgentSample.newTestAgent()), Agent.class),
+        () -> {
+          Map<String, Object> overrides = new LinkedHashMap<>();
+          overrides.put("businessMessagesAgent.nonLocalConfig.callDeflectionPhoneNumbers",
+              Collections.singletonList(
+                  new Phone().setNumber(AgentSample.getRandomPhoneNumber())));
+          overrides.put("businessMessagesAgent.nonLocalConfig.enabledDomains",
+              Collections.singletonList(AgentSample.getRandomUrl()));
+          return overrides;
+        });
+  }
+
+  /**
+   * Returns a new agent with the overrides applied, sharing all other sub-objects with the
+   * template.
+   *
+   * @param overrides Field values keyed by dotted path, or null for none.
+   * @throws IllegalArgumentException If a path does not lead to an object field.
+   */
+  public Agent instantiate(Map<String, Object> overrides) {
+    if (instanceOverrides != null) {
+      Map<String, Object> merged = instanceOverrides.get();
+      if (overrides != null) {
+        merged.putAll(overrides);
+      }
+      overrides = merged;
+    }
+
+    Agent agent = shallowCopy(template);
+    if (overrides == null) {
+      return agent;
+    }
+
+    for (Map.Entry<String, Object> override : overrides.entrySet()) {
+      String[] segments = override.getKey().split("\\.");
+
+      // Copy each object on the path before changing it, so the template stays untouched
+      GenericJson parent = agent;
+      for (int i = 0; i < segments.length - 1; i++) {
+        Object child = parent.get(segments[i]);
+        GenericJson copy;
+        if (child instanceof GenericJson) {
+          copy = shallowCopy((GenericJson) child);
+        } else if (child == null || Data.isNull(child)) {
+          copy = newFieldObject(parent, segments[i], override.getKey());
+        } else {
+          throw new IllegalArgumentException(
+              override.getKey() + ": " + segments[i] + " is not an object");
+        }
+        parent.set(segments[i], copy);
+        parent = copy;
+      }
+
+      String field = segments[segments.length - 1];
+      parent.set(field, convert(parent, field, override.getValue()));
+    }
+
+    return agent;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends GenericJson> T shallowCopy(T source) {
+    T copy = (T) Types.newInstance(source.getClass());
+    for (Map.Entry<String, Object> field : source.entrySet()) {
+      copy.set(field.getKey(), field.getValue());
+    }
+    copy.setFactory(source.getFactory());
+
+    return copy;
+  }
+
+  private static GenericJson newFieldObject(GenericJson parent, String field, String path) {
+    FieldInfo fieldInfo = ClassInfo.of(parent.getClass()).getFieldInfo(field);
+    if (fieldInfo == null) {
+      return new GenericJson();
+    }
+    if (!GenericJson.class.isAssignableFrom(fieldInfo.getType())) {
+      throw new IllegalArgumentException(path + ": " + field + " is not an object");
+    }
+
+    return (GenericJson) Types.newInstance(fieldInfo.getType());
+  }
+
+  /**
+   * Converts a parsed JSON value to the type of the field it overrides.
+   */
+  private static Object convert(GenericJson parent, String field, Object value) {
+    FieldInfo fieldInfo = ClassInfo.of(parent.getClass()).getFieldInfo(field);
+    boolean structured = value instanceof Map || value instanceof Iterable;
+    if (fieldInfo == null || value == null
+        || (!structured && fieldInfo.getType().isInstance(value))) {
+      return value;
+    }
+
+    Type type = fieldInfo.getGenericType();
+    try {
+      return jsonFactory.createJsonParser(jsonFactory.toString(value)).parse(type, true);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Cannot convert the value of " + field + " to " + type,
+          e);
+    }
+  }
+}
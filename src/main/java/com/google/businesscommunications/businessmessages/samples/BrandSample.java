@@ -15,8 +15,7 @@ package com.google.businesscommunications.businessmessages.samples;
 
 import com.google.api.services.businesscommunications.v1.BusinessCommunications;
 import com.google.api.services.businesscommunications.v1.model.Brand;
-import java.io.IOException;
-import java.util.List;
+import com.google.api.services.businesscommunications.v1.model.ListBrandsResponse;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,7 +34,7 @@ public class BrandSample {
 
   private static final Logger logger = Logger.getLogger(BrandSample.class.getName());
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String args[]) {
     boolean deleteBrand = true;
@@ -45,23 +44,24 @@ public class BrandSample {
       deleteBrand = args[0].equals("NO-DELETE") ? false : true;
     }
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     // Create a brand
     View.header("Create Brand:");
-    Brand brand = createBrand();
+    Brand brand = View.requireResult(createBrand(), "create the brand");
 
-    View.printBreak(5);
+    View.awaitCreated(5, brand.getName(), name -> client.brands().get(name).execute());
 
     // Get brand details
     View.header("Get Brand Details:");
-    brand = getBrand(brand.getName());
+    brand = View.requireResult(getBrand(brand.getName()), "get the brand");
+    System.out.print(ResourceCaches.BRANDS.summary());
 
     View.printBreak(3);
 
     // Update the brand
     View.header("Updating Brand:");
-    brand = updateBrand(brand, "New Test Brand Name");
+    brand = View.requireResult(updateBrand(brand, "New Test Brand Name"), "update the brand");
 
     View.printBreak(3);
 
@@ -86,10 +86,11 @@ public class BrandSample {
   private static Brand createBrand() {
     Brand brand = null;
     try {
-      BusinessCommunications.Brands.Create request = builder
-          .build().brands().create(new Brand().setDisplayName("Test Brand"));
+      BusinessCommunications.Brands.Create request = client
+          .brands().create(new Brand().setDisplayName("Test Brand"));
 
       brand = request.execute();
+      ResourceCaches.BRANDS.put(brand);
 
       System.out.println(brand.toPrettyString());
     } catch (Exception e) {
@@ -109,13 +110,12 @@ public class BrandSample {
   private static Brand updateBrand(Brand brand, String displayName) {
     Brand updatedBrand = null;
     try {
-      // Update the brand object's display name for the new value
-      brand.setDisplayName(displayName);
+      // Update a copy of the brand object's display name for the new value
+      Brand desiredBrand = brand.clone().setDisplayName(displayName);
 
-      BusinessCommunications.Brands.Patch request = builder
-          .build().brands().patch(brand.getName(), brand);
-
-      updatedBrand = request.execute();
+      // Sends only the display name, with a matching update mask
+      updatedBrand = UpdateMasks.patchBrand(client, brand, desiredBrand);
+      ResourceCaches.BRANDS.put(updatedBrand);
 
       System.out.println(updatedBrand.toPrettyString());
     } catch (Exception e) {
@@ -126,7 +126,8 @@ public class BrandSample {
   }
 
   /**
-   * Based on the brand name, looks up the brand details.
+   * Based on the brand name, looks up the brand details. The brand is served from the
+   * local cache when it was read or written recently, unless {@code bc.cache.bypass} is set.
    *
    * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
    * @return The matching brand object.
@@ -134,10 +135,8 @@ public class BrandSample {
   private static Brand getBrand(String brandName) {
     Brand brand = null;
     try {
-      BusinessCommunications.Brands.Get request = builder
-          .build().brands().get(brandName);
-
-      brand = request.execute();
+      brand = ResourceCaches.BRANDS.get(brandName,
+          name -> client.brands().get(name).execute());
 
       System.out.println(brand.toPrettyString());
     } catch (Exception e) {
@@ -148,20 +147,16 @@ public class BrandSample {
   }
 
   /**
-   * Lists all brands for the configured Cloud project.
+   * Lists all brands for the configured Cloud project, following page tokens until every brand
+   * has been printed.
    */
   private static void listBrands() {
-    try {
-      BusinessCommunications.Brands.List request = builder.build().brands().list();
-
-      List<Brand> brands = request.execute().getBrands();
-      brands.stream().forEach(brand -> {
-        try {
-          System.out.println(brand.toPrettyString());
-        } catch (IOException e) {
-          logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
-        }
-      });
+    try (PagedIterator<ListBrandsResponse, Brand> brands
+        = Pagination.brands(client, Constants.LIST_PAGE_SIZE);
+        StreamingJsonWriter writer = StreamingJsonWriter.toStandardOutput()) {
+      while (brands.hasNext()) {
+        writer.write(brands.next());
+      }
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
@@ -175,9 +170,10 @@ public class BrandSample {
    */
   private static void deleteBrand(String brandName) {
     try {
-      BusinessCommunications.Brands.Delete request = builder.build().brands().delete(brandName);
+      BusinessCommunications.Brands.Delete request = client.brands().delete(brandName);
 
       System.out.println(request.execute());
+      ResourceCaches.invalidateBrand(brandName);
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
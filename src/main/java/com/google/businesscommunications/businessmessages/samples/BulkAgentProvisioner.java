@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.Key;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.ListAgentsResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates agents in bulk from an {@link AgentTemplate} and a JSONL parameter file.
+ * <p>
+ * The template is parsed once. Each parameter line names the brand to create the agent in, and
+ * optionally its display name and overrides of other template fields by dotted path:
+ * <pre>
+ * {"brand": "brands/BRAND_ID", "displayName": "Store 42",
+ *  "overrides": {"businessMessagesAgent.logoUrl": "https://example.com/42.png"}}
+ * </pre>
+ * Every agent shares the unchanged parts of the template, so creating thousands of agents does
+ * not copy the conversation starters, hours or survey configuration thousands of times. Agents
+ * are created concurrently, with the number of in-flight requests bounded by a permit pool, and
+ * the outcome of every line is written as one JSON line to the output file.
+ * <p>
+ * Given a journal file, every create is recorded in a {@link JobJournal} under the line's key,
+ * which defaults to "BRAND/DISPLAY_NAME", or to the line number when the line has no display
+ * name. When the provisioner is run again with the same journal, lines whose agent was created
+ * are skipped and reported with the status SKIPPED. Creating an agent is not idempotent, so a
+ * create is on disk in the journal before its request is sent. Before a line that failed or
+ * was still in flight is created again, the agents of its brand are listed once, and an agent
+ * with the line's display name is taken as the line's, reported as SKIPPED. A line without a
+ * display name of its own cannot be looked up this way and is reported as FAILED instead of
+ * being created a second time.
+ * <p>
+ * Pass SAMPLE as the template file to use the agent that {@link AgentSample} creates.
+ */
+public class BulkAgentProvisioner {
+
+  private static final Logger logger = Logger.getLogger(BulkAgentProvisioner.class.getName());
+
+  private static final int DEFAULT_CONCURRENCY = 20;
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  /**
+   * One agent to create, as read from the parameter file.
+   */
+  public static class AgentParameters extends GenericJson {
+
+    @Key
+    public String brand;
+
+    @Key
+    public String displayName;
+
+    @Key
+    public Map<String, Object> overrides;
+
+    // Identifies the line in the job journal
+    @Key
+    public String key;
+
+    /**
+     * Returns the key of the line in the job journal.
+     */
+    String getJournalKey(int lineNumber) {
+      if (key != null) {
+        return key;
+      }
+      return displayName != null ? brand + "/" + displayName : brand + "/line " + lineNumber;
+    }
+  }
+
+  /**
+   * The agents that already exist in each brand, listed the first time a brand is asked for.
+   * Each brand is listed once, by the first worker that asks for it, while workers asking for
+   * other brands go on; a failed list is tried again by the next worker that asks.
+   */
+  private static final class ExistingAgents {
+
+    private final BusinessCommunications client;
+
+    // Agent names by display name, per brand
+    private final ConcurrentMap<String, CompletableFuture<Map<String, String>>> namesByBrand
+        = new ConcurrentHashMap<>();
+
+    ExistingAgents(BusinessCommunications client) {
+      this.client = client;
+    }
+
+    /**
+     * Returns the name of an agent of the brand with the display name, or null if none.
+     */
+    String find(String brandName, String displayName) {
+      CompletableFuture<Map<String, String>> listing = new CompletableFuture<>();
+      CompletableFuture<Map<String, String>> names = namesByBrand.putIfAbsent(brandName, listing);
+      if (names == null) {
+        names = listing;
+        try {
+          listing.complete(list(brandName));
+        } catch (RuntimeException e) {
+          namesByBrand.remove(brandName, listing);
+          listing.completeExceptionally(e);
+        }
+      }
+
+      try {
+        return names.join().get(displayName);
+      } catch (CompletionException e) {
+        throw (RuntimeException) e.getCause();
+      }
+    }
+
+    private Map<String, String> list(String brandName) {
+      Map<String, String> names = new HashMap<>();
+      try (PagedIterator<ListAgentsResponse, Agent> agents
+          = Pagination.agents(client, brandName, Constants.LIST_PAGE_SIZE)) {
+        while (agents.hasNext()) {
+          Agent agent = agents.next();
+          names.putIfAbsent(agent.getDisplayName(), agent.getName());
+        }
+      }
+
+      return names;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      logger.severe("Usage: mvn exec:java -Dexec.args=\"<TEMPLATE_FILE> <PARAMETERS_FILE> "
+          + "<OUTPUT_FILE> [CONCURRENCY] [JOURNAL_FILE]\"");
+
+      System.exit(-1);
+    }
+
+    String templateFile = args[0];
+    String parametersFile = args[1];
+    String outputFile = args[2];
+    int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CONCURRENCY;
+    String journalFile = args.length > 4 ? args[4] : null;
+
+    View.header("Bulk agent creation from " + templateFile + " and " + parametersFile
+        + " with concurrency " + concurrency);
+
+    AgentTemplate template = templateFile.equals("SAMPLE")
+        ? AgentTemplate.fromSampleAgent()
+        : AgentTemplate.fromFile(Paths.get(templateFile));
+
+    BusinessCommunications client = BusinessCommunicationsApi.getBusinessCommunications();
+
+    long start = System.nanoTime();
+    int[] counts;
+    if (journalFile == null) {
+      counts = provision(client, template, parametersFile, outputFile, concurrency);
+    } else {
+      try (JobJournal journal = JobJournal.open(Paths.get(journalFile))) {
+        counts = provision(client, template, parametersFile, outputFile, concurrency, journal);
+        System.out.print(journal.summary());
+      }
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    System.out.printf(
+        "Created %d agents, %d failed, %d skipped as done, in %d ms (%.1f agents/s)%n",
+        counts[0], counts[1], counts[2], elapsedMillis,
+        (counts[0] + counts[1]) * 1000.0 / Math.max(1, elapsedMillis));
+    System.out.print(BulkRunner.summaryOfRequests());
+  }
+
+  /**
+   * Creates an agent for every line of the parameter file and writes the per-line results to
+   * the output file.
+   *
+   * @param client The Business Communications client to use.
+   * @param template The template the agents are created from.
+   * @param parametersFile A .jsonl file of agent parameters.
+   * @param outputFile The file the JSONL results are written to.
+   * @param concurrency The maximum number of create requests in flight at once.
+   * @return The number of created, failed and skipped agents, in that order.
+   */
+  public static int[] provision(BusinessCommunications client, AgentTemplate template,
+      String parametersFile, String outputFile, int concurrency)
+      throws IOException, InterruptedException {
+    return provision(client, template, parametersFile, outputFile, concurrency, null);
+  }
+
+  /**
+   * Creates an agent for every line of the parameter file that the journal does not record as
+   * created, and writes the per-line results to the output file.
+   *
+   * @param client The Business Communications client to use.
+   * @param template The template the agents are created from.
+   * @param parametersFile A .jsonl file of agent parameters.
+   * @param outputFile The file the JSONL results are written to.
+   * @param concurrency The maximum number of create requests in flight at once.
+   * @param journal The journal the creates are recorded in, or null for none.
+   * @return The number of created, failed and skipped agents, in that order.
+   */
+  public static int[] provision(BusinessCommunications client, AgentTemplate template,
+      String parametersFile, String outputFile, int concurrency, JobJournal journal)
+      throws IOException, InterruptedException {
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    AtomicInteger skipped = new AtomicInteger();
+    ExistingAgents existingAgents = new ExistingAgents(client);
+
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(parametersFile),
+        StandardCharsets.UTF_8);
+        BulkRunner runner = new BulkRunner(concurrency, "agent-provisioner-%d", outputFile)) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        AgentParameters parameters;
+        try {
+          parameters = jsonFactory.fromString(line, AgentParameters.class);
+          if (parameters.brand == null) {
+            throw new IllegalArgumentException("Missing brand");
+          }
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Skipping malformed line " + lineNumber, e);
+
+          GenericJson result = new GenericJson();
+          result.set("line", lineNumber);
+          result.set("status", "FAILED");
+          result.set("error", "Malformed line: " + e.getMessage());
+          runner.writeResult(result);
+          failed.incrementAndGet();
+          continue;
+        }
+
+        String journalKey = parameters.getJournalKey(lineNumber);
+        if (journal != null && journal.isDone(journalKey)) {
+          GenericJson result = new GenericJson();
+          result.set("brand", parameters.brand);
+          result.set("displayName", parameters.displayName);
+          result.set("status", "SKIPPED");
+          result.set("name", journal.getDetail(journalKey));
+          runner.writeResult(result);
+          skipped.incrementAndGet();
+          continue;
+        }
+
+        boolean unconfirmed = journal != null && journal.isUnconfirmed(journalKey);
+        runner.submit(() -> {
+          GenericJson result = unconfirmed ? findAgent(existingAgents, parameters) : null;
+          if (result == null) {
+            if (journal != null) {
+              journal.started(journalKey);
+            }
+            result = createAgent(client, template, parameters);
+          }
+          if (journal != null) {
+            if (result.get("name") != null) {
+              journal.done(journalKey, (String) result.get("name"));
+            } else {
+              journal.failed(journalKey, (String) result.get("error"));
+            }
+          }
+          if ("CREATED".equals(result.get("status"))) {
+            created.incrementAndGet();
+          } else if ("SKIPPED".equals(result.get("status"))) {
+            skipped.incrementAndGet();
+          } else {
+            failed.incrementAndGet();
+          }
+          runner.writeResult(result);
+        });
+      }
+
+      runner.awaitCompletion();
+    }
+
+    return new int[] {created.get(), failed.get(), skipped.get()};
+  }
+
+  /**
+   * Looks for an agent that an earlier run created for the line without recording it.
+   *
+   * @return A SKIPPED record with the agent's name, a FAILED record if the line has no display
+   * name to look for or the brand's agents could not be listed, or null if the line's agent
+   * does not exist yet.
+   */
+  private static GenericJson findAgent(ExistingAgents existingAgents,
+      AgentParameters parameters) {
+    GenericJson result = new GenericJson();
+    result.set("brand", parameters.brand);
+    result.set("displayName", parameters.displayName);
+
+    if (parameters.displayName == null) {
+      // Every such line would match the template's display name, so the agent cannot be told
+      // apart from the others; creating it again could duplicate it
+      result.set("status", "FAILED");
+      result.set("error", "Cannot check for an earlier create of a line without a displayName; "
+          + "check the brand's agents, then give the line a displayName to create it");
+      return result;
+    }
+
+    try {
+      String name = existingAgents.find(parameters.brand, parameters.displayName);
+      if (name == null) {
+        return null;
+      }
+
+      result.set("status", "SKIPPED");
+      result.set("name", name);
+    } catch (Exception e) {
+      logger.log(Level.FINE, Constants.EXCEPTION_WAS_THROWN, e);
+
+      // Creating the agent blindly could duplicate it
+      result.set("status", "FAILED");
+      result.set("error", "Could not check for an earlier create: " + e.getMessage());
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a single agent and returns its result record.
+   */
+  private static GenericJson createAgent(BusinessCommunications client, AgentTemplate template,
+      AgentParameters parameters) {
+    GenericJson result = new GenericJson();
+    result.set("brand", parameters.brand);
+    result.set("displayName", parameters.displayName);
+
+    try {
+      Map<String, Object> overrides = new LinkedHashMap<>();
+      if (parameters.displayName != null) {
+        overrides.put("displayName", parameters.displayName);
+      }
+      if (parameters.overrides != null) {
+        overrides.putAll(parameters.overrides);
+      }
+
+      Agent agent = client.brands().agents()
+          .create(parameters.brand, template.instantiate(overrides))
+          .execute();
+
+      result.set("status", "CREATED");
+      result.set("name", agent.getName());
+    } catch (Exception e) {
+      logger.log(Level.FINE, Constants.EXCEPTION_WAS_THROWN, e);
+
+      result.set("status", "FAILED");
+      result.set("error", e.getMessage());
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.ListGreetingsResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rolls out a set of greetings to many agents.
+ * <p>
+ * The greeting spec is a JSON file with one greeting, or an array of greetings, in the format
+ * of the API's Greeting resource. For every agent listed in the agents file (one agent name per
+ * line), the agent's existing greetings are listed, and each spec greeting is matched with an
+ * existing one: by customId when the spec greeting has one, otherwise by locale. A matched
+ * greeting is patched with an update mask of just the fields that differ, and skipped if none
+ * do; an unmatched one is created. Existing greetings that match no spec are left alone.
+ * <p>
+ * Agents are processed concurrently, with the number in progress bounded by a permit pool.
+ * The requests for any one agent run in order on a single worker. The outcome for every agent
+ * is written as one JSON line to the output file.
+ */
+public class BulkGreetingManager {
+
+  private static final Logger logger = Logger.getLogger(BulkGreetingManager.class.getName());
+
+  private static final int DEFAULT_WORKERS = 16;
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      logger.severe("Usage: mvn exec:java -Dexec.args=\"<AGENTS_FILE> <GREETING_SPEC_FILE> "
+          + "<OUTPUT_FILE> [WORKERS]\"");
+
+      System.exit(-1);
+    }
+
+    String agentsFile = args[0];
+    String specFile = args[1];
+    String outputFile = args[2];
+    int workers = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_WORKERS;
+
+    View.header("Bulk greeting rollout of " + specFile + " to the agents in " + agentsFile
+        + " with " + workers + " workers");
+
+    List<Greeting> spec = readSpec(specFile);
+    BusinessCommunications client = BusinessCommunicationsApi.getBusinessCommunications();
+
+    long start = System.nanoTime();
+    int[] counts = apply(client, spec, agentsFile, outputFile, workers);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    System.out.printf(
+        "Updated %d agents, %d failed, in %d ms (%.1f agents/s): %d greetings created, "
+            + "%d patched, %d unchanged%n",
+        counts[0], counts[1], elapsedMillis,
+        (counts[0] + counts[1]) * 1000.0 / Math.max(1, elapsedMillis),
+        counts[2], counts[3], counts[4]);
+    System.out.print(UpdateMasks.summary());
+    System.out.print(BulkRunner.summaryOfRequests());
+  }
+
+  /**
+   * Reads a greeting spec file holding one greeting or an array of greetings.
+   */
+  public static List<Greeting> readSpec(String specFile) throws IOException {
+    String json = new String(Files.readAllBytes(Paths.get(specFile)), StandardCharsets.UTF_8);
+    if (!json.trim().startsWith("[")) {
+      return Collections.singletonList(jsonFactory.fromString(json, Greeting.class));
+    }
+
+    List<Greeting> greetings = new ArrayList<>();
+    JsonParser parser = jsonFactory.createJsonParser(json);
+    parser.parseArrayAndClose(greetings, Greeting.class);
+
+    return greetings;
+  }
+
+  /**
+   * Applies the greeting spec to every agent in the agents file and writes the per-agent
+   * results to the output file.
+   *
+   * @param client The Business Communications client to use.
+   * @param spec The greetings every agent should have.
+   * @param agentsFile A file with one agent name per line.
+   * @param outputFile The file the JSONL results are written to.
+   * @param workers The maximum number of agents processed at once.
+   * @return The number of agents updated and failed, followed by the number of greetings
+   * created, patched and left unchanged.
+   */
+  public static int[] apply(BusinessCommunications client, List<Greeting> spec,
+      String agentsFile, String outputFile, int workers)
+      throws IOException, InterruptedException {
+    AtomicInteger succeeded = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger patched = new AtomicInteger();
+    AtomicInteger unchanged = new AtomicInteger();
+
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(agentsFile),
+        StandardCharsets.UTF_8);
+        BulkRunner runner = new BulkRunner(workers, "greeting-manager-%d", outputFile)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String agentName = line.trim();
+        if (agentName.isEmpty()) {
+          continue;
+        }
+
+        runner.submit(() -> {
+          GenericJson result = applyToAgent(client, spec, agentName);
+          if ("DONE".equals(result.get("status"))) {
+            succeeded.incrementAndGet();
+          } else {
+            failed.incrementAndGet();
+          }
+          created.addAndGet(((List<?>) result.get("created")).size());
+          patched.addAndGet(((List<?>) result.get("patched")).size());
+          unchanged.addAndGet(((List<?>) result.get("unchanged")).size());
+          runner.writeResult(result);
+        });
+      }
+
+      runner.awaitCompletion();
+    }
+
+    return new int[] {
+        succeeded.get(), failed.get(), created.get(), patched.get(), unchanged.get()};
+  }
+
+  /**
+   * Brings the greetings of one agent in line with the spec and returns its result record.
+   * Stops at the first failed request, so later spec greetings are not applied out of order.
+   */
+  private static GenericJson applyToAgent(BusinessCommunications client, List<Greeting> spec,
+      String agentName) {
+    List<String> created = new ArrayList<>();
+    List<String> patched = new ArrayList<>();
+    List<String> unchanged = new ArrayList<>();
+
+    GenericJson result = new GenericJson();
+    result.set("agent", agentName);
+    result.set("created", created);
+    result.set("patched", patched);
+    result.set("unchanged", unchanged);
+
+    try {
+      List<Greeting> existing = new ArrayList<>();
+      try (PagedIterator<ListGreetingsResponse, Greeting> greetings
+          = Pagination.greetings(client, agentName, Constants.LIST_PAGE_SIZE)) {
+        while (greetings.hasNext()) {
+          existing.add(greetings.next());
+        }
+      }
+
+      for (Greeting desired : spec) {
+        Greeting current = findMatch(existing, desired);
+        if (current == null) {
+          Greeting greeting = client.brands().agents().greetings()
+              .create(agentName, desired)
+              .execute();
+          existing.add(greeting);
+          created.add(greeting.getName());
+        } else if (UpdateMasks.patchGreeting(client, current, desired) == current) {
+          unchanged.add(current.getName());
+        } else {
+          patched.add(current.getName());
+        }
+      }
+
+      result.set("status", "DONE");
+    } catch (Exception e) {
+      logger.log(Level.FINE, Constants.EXCEPTION_WAS_THROWN, e);
+
+      result.set("status", "FAILED");
+      result.set("error", e.getMessage());
+    }
+
+    return result;
+  }
+
+  private static Greeting findMatch(List<Greeting> existing, Greeting desired) {
+    for (Greeting greeting : existing) {
+      boolean matches = desired.getCustomId() != null
+          ? desired.getCustomId().equals(greeting.getCustomId())
+          : Objects.equals(desired.getLocale(), greeting.getLocale());
+      if (matches) {
+        return greeting;
+      }
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.Key;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.ListLocationsResponse;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import com.google.api.services.businesscommunications.v1.model.LocationEntryPointConfig;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates locations in bulk from a CSV or JSONL file.
+ * <p>
+ * Each input row describes one location: its Place ID, the agent it belongs to, its default
+ * locale and its allowed entry points. Rows are created concurrently, with the number of
+ * in-flight requests bounded by a permit pool, and the outcome of every row is written as one
+ * JSON line to the output file.
+ * <p>
+ * CSV input has the columns placeId,agent,locale,entryPoints where entryPoints is a
+ * semicolon-separated list such as "PLACESHEET;MAPS_TACTILE". A header row is optional. JSONL
+ * input has one object per line with the fields placeId, agent, locale and entryPoints (an
+ * array), and optionally a key.
+ * <p>
+ * Given a journal file, every create is recorded in a {@link JobJournal} under the row's key,
+ * which defaults to "AGENT/PLACE_ID". When the provisioner is run again with the same journal,
+ * for example after the JVM died, rows that were already created are skipped and reported with
+ * the status SKIPPED and the name recorded earlier. A create is on disk in the journal before
+ * its request is sent. Rows that failed or were still in flight may therefore have been created
+ * anyway. Before such a row is created again, the locations of its brand are listed once, and a
+ * location with the row's agent and Place ID is taken as the row's, reported as SKIPPED.
+ */
+public class BulkLocationProvisioner {
+
+  private static final Logger logger = Logger.getLogger(BulkLocationProvisioner.class.getName());
+
+  private static final int DEFAULT_CONCURRENCY = 20;
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  /**
+   * One location to create, as read from the input file.
+   */
+  public static class LocationRow extends GenericJson {
+
+    @Key
+    public String placeId;
+
+    @Key
+    public String agent;
+
+    @Key
+    public String locale;
+
+    @Key
+    public List<String> entryPoints;
+
+    // Identifies the row in the job journal
+    @Key
+    public String key;
+
+    /**
+     * Returns the brand name derived from the agent name.
+     */
+    String getBrandName() {
+      int agentsIndex = agent.indexOf("/agents/");
+      return agentsIndex < 0 ? agent : agent.substring(0, agentsIndex);
+    }
+
+    /**
+     * Returns the key of the row in the job journal.
+     */
+    String getJournalKey() {
+      return key != null ? key : agent + "/" + placeId;
+    }
+  }
+
+  /**
+   * The locations that already exist in each brand, listed the first time a brand is asked for.
+   * Each brand is listed once, by the first worker that asks for it, while workers asking for
+   * other brands go on; a failed list is tried again by the next worker that asks.
+   */
+  private static final class ExistingLocations {
+
+    private final BusinessCommunications client;
+
+    // Location names by agent and Place ID, per brand
+    private final ConcurrentMap<String, CompletableFuture<Map<String, String>>> namesByBrand
+        = new ConcurrentHashMap<>();
+
+    ExistingLocations(BusinessCommunications client) {
+      this.client = client;
+    }
+
+    /**
+     * Returns the name of the location with the row's agent and Place ID, or null if none.
+     */
+    String find(LocationRow row) {
+      String brandName = row.getBrandName();
+      CompletableFuture<Map<String, String>> listing = new CompletableFuture<>();
+      CompletableFuture<Map<String, String>> names = namesByBrand.putIfAbsent(brandName, listing);
+      if (names == null) {
+        names = listing;
+        try {
+          listing.complete(list(brandName));
+        } catch (RuntimeException e) {
+          namesByBrand.remove(brandName, listing);
+          listing.completeExceptionally(e);
+        }
+      }
+
+      try {
+        return names.join().get(row.agent + "/" + row.placeId);
+      } catch (CompletionException e) {
+        throw (RuntimeException) e.getCause();
+      }
+    }
+
+    private Map<String, String> list(String brandName) {
+      Map<String, String> names = new HashMap<>();
+      try (PagedIterator<ListLocationsResponse, Location> locations
+          = Pagination.locations(client, brandName, Constants.LIST_PAGE_SIZE)) {
+        while (locations.hasNext()) {
+          Location location = locations.next();
+          names.put(location.getAgent() + "/" + location.getPlaceId(), location.getName());
+        }
+      }
+
+      return names;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      logger.severe(
+          "Usage: mvn exec:java -Dexec.args=\"<INPUT_FILE> <OUTPUT_FILE> [CONCURRENCY] "
+              + "[JOURNAL_FILE]\"");
+
+      System.exit(-1);
+    }
+
+    String inputFile = args[0];
+    String outputFile = args[1];
+    int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CONCURRENCY;
+    String journalFile = args.length > 3 ? args[3] : null;
+
+    View.header("Bulk location provisioning from " + inputFile
+        + " with concurrency " + concurrency);
+
+    BusinessCommunications client = BusinessCommunicationsApi.getBusinessCommunications();
+
+    long start = System.nanoTime();
+    int[] counts;
+    if (journalFile == null) {
+      counts = provision(client, inputFile, outputFile, concurrency);
+    } else {
+      try (JobJournal journal = JobJournal.open(Paths.get(journalFile))) {
+        counts = provision(client, inputFile, outputFile, concurrency, journal);
+        System.out.print(journal.summary());
+      }
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    System.out.printf(
+        "Created %d locations, %d failed, %d skipped as done, in %d ms (%.1f locations/s)%n",
+        counts[0], counts[1], counts[2], elapsedMillis,
+        (counts[0] + counts[1]) * 1000.0 / Math.max(1, elapsedMillis));
+    System.out.print(BulkRunner.summaryOfRequests());
+  }
+
+  /**
+   * Creates every location in the input file and writes the per-row results to the output file.
+   *
+   * @param client The Business Communications client to use.
+   * @param inputFile A .csv or .jsonl file of locations to create.
+   * @param outputFile The file the JSONL results are written to.
+   * @param concurrency The maximum number of create requests in flight at once.
+   * @return The number of created, failed and skipped rows, in that order.
+   */
+  public static int[] provision(BusinessCommunications client, String inputFile,
+      String outputFile, int concurrency) throws IOException, InterruptedException {
+    return provision(client, inputFile, outputFile, concurrency, null);
+  }
+
+  /**
+   * Creates every location in the input file that the journal does not record as created, and
+   * writes the per-row results to the output file.
+   *
+   * @param client The Business Communications client to use.
+   * @param inputFile A .csv or .jsonl file of locations to create.
+   * @param outputFile The file the JSONL results are written to.
+   * @param concurrency The maximum number of create requests in flight at once.
+   * @param journal The journal the creates are recorded in, or null for none.
+   * @return The number of created, failed and skipped rows, in that order.
+   */
+  public static int[] provision(BusinessCommunications client, String inputFile,
+      String outputFile, int concurrency, JobJournal journal)
+      throws IOException, InterruptedException {
+    boolean jsonLines = inputFile.endsWith(".jsonl") || inputFile.endsWith(".json");
+
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    AtomicInteger skipped = new AtomicInteger();
+    ExistingLocations existingLocations = new ExistingLocations(client);
+
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(inputFile),
+        StandardCharsets.UTF_8);
+        BulkRunner runner = new BulkRunner(concurrency, "provisioner-%d", outputFile)) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        boolean csvHeader = !jsonLines && lineNumber == 1 && line.startsWith("placeId");
+        if (line.trim().isEmpty() || csvHeader) {
+          continue;
+        }
+
+        LocationRow row;
+        try {
+          row = jsonLines ? jsonFactory.fromString(line, LocationRow.class) : parseCsv(line);
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Skipping malformed line " + lineNumber, e);
+
+          GenericJson result = new GenericJson();
+          result.set("line", lineNumber);
+          result.set("status", "FAILED");
+          result.set("error", "Malformed line: " + e.getMessage());
+          runner.writeResult(result);
+          failed.incrementAndGet();
+          continue;
+        }
+
+        String journalKey = row.getJournalKey();
+        if (journal != null && journal.isDone(journalKey)) {
+          GenericJson result = new GenericJson();
+          result.set("placeId", row.placeId);
+          result.set("agent", row.agent);
+          result.set("status", "SKIPPED");
+          result.set("name", journal.getDetail(journalKey));
+          runner.writeResult(result);
+          skipped.incrementAndGet();
+          continue;
+        }
+
+        boolean unconfirmed = journal != null && journal.isUnconfirmed(journalKey);
+        runner.submit(() -> {
+          GenericJson result = unconfirmed ? findLocation(existingLocations, row) : null;
+          if (result == null) {
+            if (journal != null) {
+              journal.started(journalKey);
+            }
+            result = createLocation(client, row);
+          }
+          if (journal != null) {
+            if (result.get("name") != null) {
+              journal.done(journalKey, (String) result.get("name"));
+            } else {
+              journal.failed(journalKey, (String) result.get("error"));
+            }
+          }
+          if ("CREATED".equals(result.get("status"))) {
+            created.incrementAndGet();
+          } else if ("SKIPPED".equals(result.get("status"))) {
+            skipped.incrementAndGet();
+          } else {
+            failed.incrementAndGet();
+          }
+          runner.writeResult(result);
+        });
+      }
+
+      runner.awaitCompletion();
+    }
+
+    return new int[] {created.get(), failed.get(), skipped.get()};
+  }
+
+  /**
+   * Looks for a location that an earlier run created for the row without recording it.
+   *
+   * @return A SKIPPED record with the location's name, a FAILED record if the brand's locations
+   * could not be listed, or null if the row's location does not exist yet.
+   */
+  private static GenericJson findLocation(ExistingLocations existingLocations,
+      LocationRow row) {
+    GenericJson result = new GenericJson();
+    result.set("placeId", row.placeId);
+    result.set("agent", row.agent);
+
+    try {
+      String name = existingLocations.find(row);
+      if (name == null) {
+        return null;
+      }
+
+      result.set("status", "SKIPPED");
+      result.set("name", name);
+    } catch (Exception e) {
+      logger.log(Level.FINE, Constants.EXCEPTION_WAS_THROWN, e);
+
+      // Creating the location blindly could duplicate it
+      result.set("status", "FAILED");
+      result.set("error", "Could not check for an earlier create: " + e.getMessage());
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a single location and returns its result record.
+   */
+  private static GenericJson createLocation(BusinessCommunications client, LocationRow row) {
+    GenericJson result = new GenericJson();
+    result.set("placeId", row.placeId);
+    result.set("agent", row.agent);
+
+    try {
+      Location location = client.brands().locations()
+          .create(row.getBrandName(), toLocation(row))
+          .execute();
+
+      result.set("status", "CREATED");
+      result.set("name", location.getName());
+    } catch (Exception e) {
+      logger.log(Level.FINE, Constants.EXCEPTION_WAS_THROWN, e);
+
+      result.set("status", "FAILED");
+      result.set("error", e.getMessage());
+    }
+
+    return result;
+  }
+
+  private static Location toLocation(LocationRow row) {
+    List<LocationEntryPointConfig> entryPointConfigs = new ArrayList<>();
+    if (row.entryPoints != null) {
+      for (String entryPoint : row.entryPoints) {
+        entryPointConfigs.add(new LocationEntryPointConfig().setAllowedEntryPoint(entryPoint));
+      }
+    }
+
+    return new Location()
+        .setPlaceId(row.placeId)
+        .setAgent(row.agent)
+        .setDefaultLocale(row.locale)
+        .setLocationEntryPointConfigs(entryPointConfigs);
+  }
+
+  private static LocationRow parseCsv(String line) {
+    String[] columns = line.split(",", -1);
+    if (columns.length < 3) {
+      throw new IllegalArgumentException("Expected placeId,agent,locale[,entryPoints]");
+    }
+
+    LocationRow row = new LocationRow();
+    row.placeId = columns[0].trim();
+    row.agent = columns[1].trim();
+    row.locale = columns[2].trim();
+    row.entryPoints = columns.length > 3 && !columns[3].trim().isEmpty()
+        ? Arrays.asList(columns[3].trim().split(";"))
+        : new ArrayList<>();
+
+    return row;
+  }
+}
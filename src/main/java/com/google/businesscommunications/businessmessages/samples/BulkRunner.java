@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the tasks of a bulk tool and writes their results to a JSONL file.
+ * <p>
+ * Tasks run on an executor from {@link TaskExecutors}, and each one holds a permit from a pool of
+ * {@code concurrency} permits while it runs. {@link #submit} blocks until a permit is free, so
+ * the number of tasks in progress is bounded on virtual threads as well as on a thread pool, and
+ * a caller reading its input line by line does not run ahead of the tasks. Memory use therefore
+ * stays flat regardless of the input size. A task must not submit further tasks.
+ * <p>
+ * Every result is written as one JSON line, in the order the tasks finish. Writes may come from
+ * any thread.
+ */
+public final class BulkRunner implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(BulkRunner.class.getName());
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private final Semaphore permits;
+  private final ExecutorService executor;
+  private final BufferedWriter results;
+
+  /**
+   * @param concurrency The maximum number of tasks in progress at once.
+   * @param nameFormat The platform thread name format, e.g. "provisioner-%d".
+   * @param resultsFile The file the JSONL results are written to, created or replaced.
+   */
+  public BulkRunner(int concurrency, String nameFormat, String resultsFile) throws IOException {
+    this.results = Files.newBufferedWriter(Paths.get(resultsFile), StandardCharsets.UTF_8);
+    this.permits = new Semaphore(concurrency);
+    this.executor = TaskExecutors.newExecutor(concurrency, nameFormat);
+  }
+
+  /**
+   * Waits for a free permit, then starts the task. The permit is released when the task ends.
+   *
+   * @return The future of the task, for callers that wait for a group of tasks.
+   */
+  public Future<?> submit(Runnable task) throws InterruptedException {
+    permits.acquire();
+    try {
+      return executor.submit(() -> {
+        try {
+          task.run();
+        } finally {
+          permits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes one result record as a JSON line. A failed write is logged rather than thrown, so it
+   * does not fail the task that produced the result.
+   */
+  public void writeResult(GenericJson result) {
+    try {
+      String json = jsonFactory.toString(result);
+      synchronized (results) {
+        results.write(json);
+        results.newLine();
+      }
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
+    }
+  }
+
+  /**
+   * Waits for every submitted task to finish. No tasks can be submitted afterwards.
+   */
+  public void awaitCompletion() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops any tasks still running and closes the results file.
+   */
+  @Override
+  public void close() throws IOException {
+    executor.shutdownNow();
+    synchronized (results) {
+      results.close();
+    }
+  }
+
+  /**
+   * Returns the summaries of the shared rate limiter, retry policy, request metrics and
+   * credentials, as the bulk tools print them when they finish.
+   */
+  public static String summaryOfRequests() {
+    return RequestThrottler.getInstance().summary()
+        + RetryPolicy.getInstance().summary()
+        + RequestMetrics.getInstance().summary()
+        + CredentialManager.summaryOfAll();
+  }
+}
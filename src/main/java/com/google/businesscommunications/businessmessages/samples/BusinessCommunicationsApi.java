@@ -14,7 +14,6 @@
 package com.google.businesscommunications.businessmessages.samples;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.businesscommunications.v1.BusinessCommunications;
@@ -36,44 +35,87 @@ public class BusinessCommunicationsApi {
    * @param credentialsFileLocation The location for the GCP service account key file.
    */
   private static void initCredentials(String credentialsFileLocation) {
+    credential = loadCredential(credentialsFileLocation);
+  }
+
+  /**
+   * Loads and scopes the service account credentials stored in the given resource file.
+   *
+   * @param credentialsFileLocation The location for the GCP service account key file.
+   * @return The scoped credential, or null if it could not be loaded or its first access token
+   * could not be fetched.
+   */
+  static GoogleCredential loadCredential(String credentialsFileLocation) {
     logger.info("Initializing credentials for the Business Communications API.");
 
+    GoogleCredential scopedCredential = null;
+
     try {
-      credential = GoogleCredential
+      GoogleCredential loadedCredential = GoogleCredential
           .fromStream(
-              BusinessCommunicationsApi.class.getResourceAsStream("/" + credentialsFileLocation));
+              BusinessCommunicationsApi.class.getResourceAsStream("/" + credentialsFileLocation))
+          .createScoped(Arrays.asList(
+              "https://www.googleapis.com/auth/businesscommunications"));
 
-      credential = credential.createScoped(Arrays.asList(
-          "https://www.googleapis.com/auth/businesscommunications"));
-
-      credential.refreshToken();
+      // Fetch the first token now and keep it fresh off the request path
+      CredentialManager.start(loadedCredential);
+      scopedCredential = loadedCredential;
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
+
+    return scopedCredential;
+  }
+
+  /**
+   * Returns the shared Business Communications client. The client is thread-safe and should be
+   * reused for every request rather than rebuilt per call.
+   */
+  public static BusinessCommunications getBusinessCommunications() {
+    return BusinessCommunicationsClientFactory.getClient();
   }
 
   /**
    * Initializes the Business Communications builder.
+   * <p>
+   * Prefer {@link #getBusinessCommunications()}; each call to {@code build()} on the returned
+   * builder creates a new client.
    */
   public static BusinessCommunications.Builder getBusinessCommunicationsBuilder() {
-    if (credential == null) {
+    String rootUrl = BusinessCommunicationsClientFactory.getRootUrl();
+    if (credential == null && BusinessCommunicationsClientFactory
+        .requiresCredential(Constants.CREDENTIALS_FILE_NAME, rootUrl)) {
       initCredentials(Constants.CREDENTIALS_FILE_NAME);
     }
 
+    return newBuilder(credential, rootUrl);
+  }
+
+  /**
+   * Initializes a Business Communications builder for the given credentials and endpoint.
+   *
+   * @param credential The credentials used to authorize requests, or null to send unauthorized
+   * requests to a test endpoint.
+   * @param rootUrl The root URL of the Business Communications API.
+   */
+  static BusinessCommunications.Builder newBuilder(GoogleCredential credential, String rootUrl) {
     BusinessCommunications.Builder builder = null;
 
     try {
-      HttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
+      HttpTransport httpTransport = BusinessCommunicationsClientFactory.getTransport();
       JacksonFactory jsonFactory = JacksonFactory.getDefaultInstance();
 
       // Create instance of the Business Communications API
       builder = new BusinessCommunications
           .Builder(httpTransport, jsonFactory, null)
-          .setApplicationName(credential.getServiceAccountProjectId());
+          .setApplicationName(credential == null
+              ? BusinessCommunicationsClientFactory.UNAUTHENTICATED_APPLICATION_NAME
+              : credential.getServiceAccountProjectId());
 
       // Set the API credentials and endpoint
-      builder.setHttpRequestInitializer(credential);
-      builder.setRootUrl(Constants.API_URL);
+      builder.setHttpRequestInitializer(
+          BusinessCommunicationsClientFactory.withRequestLayers(credential));
+      builder.setRootUrl(rootUrl);
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
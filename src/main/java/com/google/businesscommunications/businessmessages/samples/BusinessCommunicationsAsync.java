@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous versions of the brand, agent, location, and greeting operations used by the
+ * samples.
+ * <p>
+ * Every method returns immediately with a {@link CompletableFuture} that completes on the
+ * configured executor, so dependent steps can be composed without a waiting thread per step:
+ *
+ * <pre>
+ * BusinessCommunicationsAsync api = BusinessCommunicationsAsync.getDefault();
+ * api.createBrandAsync(new Brand().setDisplayName("Brand"))
+ *     .thenCompose(brand -&gt; api.createAgentAsync(brand.getName(), agent))
+ *     .thenCompose(agent -&gt; api.createLocationAsync(brandName, location.setAgent(agent.getName())));
+ * </pre>
+ * <p>
+ * Futures fail with a {@link CompletionException} wrapping the {@link IOException} of the
+ * request. Reads, writes, and deletes keep {@link ResourceCaches} current in the same way as the
+ * blocking samples. Patches send only the fields that differ, as computed by
+ * {@link UpdateMasks}.
+ * <p>
+ * The default executor is a fixed pool of daemon threads whose size is read from the
+ * {@code bc.async.threads} system property (default 32). Since each request holds a thread while
+ * it waits for the response, this is also the maximum number of requests in flight. With
+ * {@code -Dbc.executor=virtual} every request runs on its own virtual thread instead (see
+ * {@link TaskExecutors}), so the requests in flight are bounded only by the client-side rate
+ * limit, when one is configured, and by the callers.
+ */
+public class BusinessCommunicationsAsync {
+
+  private static final int DEFAULT_THREADS = Integer.getInteger("bc.async.threads", 32);
+
+  private static volatile BusinessCommunicationsAsync defaultInstance;
+
+  /**
+   * A blocking API call.
+   */
+  private interface Call<T> {
+
+    T execute() throws IOException;
+  }
+
+  private final BusinessCommunications client;
+  private final Executor executor;
+
+  /**
+   * @param client The client used for every request.
+   * @param executor Runs the blocking requests.
+   */
+  public BusinessCommunicationsAsync(BusinessCommunications client, Executor executor) {
+    this.client = client;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns an instance that uses the shared client and the default executor.
+   */
+  public static BusinessCommunicationsAsync getDefault() {
+    if (defaultInstance == null) {
+      synchronized (BusinessCommunicationsAsync.class) {
+        if (defaultInstance == null) {
+          defaultInstance = new BusinessCommunicationsAsync(
+              BusinessCommunicationsClientFactory.getClient(),
+              TaskExecutors.newExecutor(DEFAULT_THREADS, "bc-async-%d"));
+        }
+      }
+    }
+
+    return defaultInstance;
+  }
+
+  /**
+   * Creates a brand.
+   */
+  public CompletableFuture<Brand> createBrandAsync(Brand brand) {
+    return supply(() -> {
+      Brand created = client.brands().create(brand).execute();
+      ResourceCaches.BRANDS.put(created);
+      return created;
+    });
+  }
+
+  /**
+   * Gets a brand, served from the cache when it was read or written recently.
+   *
+   * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
+   */
+  public CompletableFuture<Brand> getBrandAsync(String brandName) {
+    return supply(() -> ResourceCaches.BRANDS.get(brandName,
+        name -> client.brands().get(name).execute()));
+  }
+
+  /**
+   * Patches the fields of the brand that differ from the desired brand.
+   */
+  public CompletableFuture<Brand> updateBrandAsync(Brand brand, Brand desiredBrand) {
+    return supply(() -> {
+      Brand updated = UpdateMasks.patchBrand(client, brand, desiredBrand);
+      ResourceCaches.BRANDS.put(updated);
+      return updated;
+    });
+  }
+
+  /**
+   * Lists every brand, following page tokens.
+   */
+  public CompletableFuture<List<Brand>> listBrandsAsync() {
+    return supply(() -> drain(Pagination.brands(client, Constants.LIST_PAGE_SIZE)));
+  }
+
+  /**
+   * Deletes a brand along with its agents and locations.
+   *
+   * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
+   */
+  public CompletableFuture<Void> deleteBrandAsync(String brandName) {
+    return supply(() -> {
+      client.brands().delete(brandName).execute();
+      ResourceCaches.invalidateBrand(brandName);
+      return null;
+    });
+  }
+
+  /**
+   * Creates an agent for the given brand.
+   *
+   * @param brandName The brand name that this agent belongs to.
+   */
+  public CompletableFuture<Agent> createAgentAsync(String brandName, Agent agent) {
+    return supply(() -> {
+      Agent created = client.brands().agents().create(brandName, agent).execute();
+      ResourceCaches.AGENTS.put(created);
+      return created;
+    });
+  }
+
+  /**
+   * Gets an agent, served from the cache when it was read or written recently.
+   *
+   * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
+   * format.
+   */
+  public CompletableFuture<Agent> getAgentAsync(String agentName) {
+    return supply(() -> ResourceCaches.AGENTS.get(agentName,
+        name -> client.brands().agents().get(name).execute()));
+  }
+
+  /**
+   * Patches the fields of the agent that differ from the desired agent.
+   */
+  public CompletableFuture<Agent> updateAgentAsync(Agent agent, Agent desiredAgent) {
+    return supply(() -> {
+      Agent updated = UpdateMasks.patchAgent(client, agent, desiredAgent);
+      ResourceCaches.AGENTS.put(updated);
+      return updated;
+    });
+  }
+
+  /**
+   * Lists every agent of the given brand, following page tokens.
+   *
+   * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
+   */
+  public CompletableFuture<List<Agent>> listAgentsAsync(String brandName) {
+    return supply(() -> drain(Pagination.agents(client, brandName, Constants.LIST_PAGE_SIZE)));
+  }
+
+  /**
+   * Deletes an agent. Only a non-verified agent can be deleted.
+   *
+   * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
+   * format.
+   */
+  public CompletableFuture<Void> deleteAgentAsync(String agentName) {
+    return supply(() -> {
+      client.brands().agents().delete(agentName).execute();
+      ResourceCaches.AGENTS.invalidate(agentName);
+      return null;
+    });
+  }
+
+  /**
+   * Creates a location for the given brand. The location must name its agent.
+   *
+   * @param brandName The brand name that this location belongs to.
+   */
+  public CompletableFuture<Location> createLocationAsync(String brandName, Location location) {
+    return supply(() -> {
+      Location created = client.brands().locations().create(brandName, location).execute();
+      ResourceCaches.LOCATIONS.put(created);
+      return created;
+    });
+  }
+
+  /**
+   * Gets a location, served from the cache when it was read or written recently.
+   *
+   * @param locationName The unique identifier for the location in
+   * "brands/BRAND_ID/locations/LOCATION_ID" format.
+   */
+  public CompletableFuture<Location> getLocationAsync(String locationName) {
+    return supply(() -> ResourceCaches.LOCATIONS.get(locationName,
+        name -> client.brands().locations().get(name).execute()));
+  }
+
+  /**
+   * Patches the fields of the location that differ from the desired location.
+   */
+  public CompletableFuture<Location> updateLocationAsync(Location location,
+      Location desiredLocation) {
+    return supply(() -> {
+      Location updated = UpdateMasks.patchLocation(client, location, desiredLocation);
+      ResourceCaches.LOCATIONS.put(updated);
+      return updated;
+    });
+  }
+
+  /**
+   * Lists every location of the given brand, following page tokens.
+   *
+   * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
+   */
+  public CompletableFuture<List<Location>> listLocationsAsync(String brandName) {
+    return supply(() -> drain(Pagination.locations(client, brandName, Constants.LIST_PAGE_SIZE)));
+  }
+
+  /**
+   * Deletes a location. Only a non-verified location can be deleted.
+   *
+   * @param locationName The unique identifier for the location in
+   * "brands/BRAND_ID/locations/LOCATION_ID" format.
+   */
+  public CompletableFuture<Void> deleteLocationAsync(String locationName) {
+    return supply(() -> {
+      client.brands().locations().delete(locationName).execute();
+      ResourceCaches.LOCATIONS.invalidate(locationName);
+      return null;
+    });
+  }
+
+  /**
+   * Creates a greeting for the given agent.
+   *
+   * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
+   * format.
+   */
+  public CompletableFuture<Greeting> createGreetingAsync(String agentName, Greeting greeting) {
+    return supply(() -> client.brands().agents().greetings().create(agentName, greeting)
+        .execute());
+  }
+
+  /**
+   * Gets a greeting.
+   *
+   * @param greetingName The unique identifier for the greeting in
+   * "brands/BRAND_ID/agents/AGENT_ID/greetings/GREETING_ID" format.
+   */
+  public CompletableFuture<Greeting> getGreetingAsync(String greetingName) {
+    return supply(() -> client.brands().agents().greetings().get(greetingName).execute());
+  }
+
+  /**
+   * Patches the fields of the greeting that differ from the desired greeting.
+   */
+  public CompletableFuture<Greeting> updateGreetingAsync(Greeting greeting,
+      Greeting desiredGreeting) {
+    return supply(() -> UpdateMasks.patchGreeting(client, greeting, desiredGreeting));
+  }
+
+  /**
+   * Lists every greeting of the given agent, following page tokens.
+   *
+   * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
+   * format.
+   */
+  public CompletableFuture<List<Greeting>> listGreetingsAsync(String agentName) {
+    return supply(() -> drain(Pagination.greetings(client, agentName, Constants.LIST_PAGE_SIZE)));
+  }
+
+  /**
+   * Deletes a greeting.
+   *
+   * @param greetingName The unique identifier for the greeting in
+   * "brands/BRAND_ID/agents/AGENT_ID/greetings/GREETING_ID" format.
+   */
+  public CompletableFuture<Void> deleteGreetingAsync(String greetingName) {
+    return supply(() -> {
+      client.brands().agents().greetings().delete(greetingName).execute();
+      return null;
+    });
+  }
+
+  private <T> CompletableFuture<T> supply(Call<T> call) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return call.execute();
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  private static <T> List<T> drain(PagedIterator<?, T> iterator) {
+    try (PagedIterator<?, T> items = iterator) {
+      List<T> result = new ArrayList<>();
+      items.forEachRemaining(result::add);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.GoogleUtils;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Builds and caches {@link BusinessCommunications} clients.
+ * <p>
+ * The default endpoint can be replaced with the {@code bc.rootUrl} system property, for example to
+ * send requests to a {@link MockBusinessCommunicationsServer}. Credentials are optional for such
+ * an endpoint: if the credentials file is missing, requests are sent without authorization.
+ * <p>
+ * A {@link BusinessCommunications} instance is thread-safe, so one client is built per
+ * credentials file and root URL and shared by every operation that uses that pair. All clients
+ * share a single {@link HttpTransport}, which means the trust store is loaded once and open
+ * connections are reused across requests. The transport backend is chosen by
+ * {@link HttpTransports}.
+ */
+public final class BusinessCommunicationsClientFactory {
+
+  private static final Logger logger = Logger
+      .getLogger(BusinessCommunicationsClientFactory.class.getName());
+
+  // Application name sent when there are no credentials to take the project ID from
+  static final String UNAUTHENTICATED_APPLICATION_NAME = "bc-command-line-examples";
+
+  // Clients keyed by "<credentials file>|<root URL>"
+  private static final ConcurrentMap<String, BusinessCommunications> clients
+      = new ConcurrentHashMap<>();
+
+  private static volatile HttpTransport transport;
+
+  private BusinessCommunicationsClientFactory() {
+  }
+
+  /**
+   * Returns the shared client for the default credentials file and the configured endpoint.
+   */
+  public static BusinessCommunications getClient() {
+    return getClient(Constants.CREDENTIALS_FILE_NAME, getRootUrl());
+  }
+
+  /**
+   * Returns the root URL set in the {@code bc.rootUrl} system property, or the production API
+   * endpoint.
+   */
+  public static String getRootUrl() {
+    String rootUrl = System.getProperty("bc.rootUrl", Constants.API_URL);
+    return rootUrl.endsWith("/") ? rootUrl : rootUrl + "/";
+  }
+
+  /**
+   * Returns the shared client for the given credentials file and root URL, building it on first
+   * use.
+   *
+   * @param credentialsFileLocation The location for the GCP service account key file.
+   * @param rootUrl The root URL of the Business Communications API.
+   * @return A thread-safe client that can be used for any number of requests.
+   */
+  public static BusinessCommunications getClient(String credentialsFileLocation, String rootUrl) {
+    return clients.computeIfAbsent(credentialsFileLocation + "|" + rootUrl, key -> {
+      logger.info("Building Business Communications client for " + rootUrl);
+
+      if (!requiresCredential(credentialsFileLocation, rootUrl)) {
+        logger.info("No credentials file found, sending unauthorized requests to " + rootUrl);
+        return newClient(null, UNAUTHENTICATED_APPLICATION_NAME, rootUrl);
+      }
+
+      GoogleCredential credential
+          = BusinessCommunicationsApi.loadCredential(credentialsFileLocation);
+      if (credential == null) {
+        throw new IllegalStateException(
+            "Unable to load credentials from " + credentialsFileLocation);
+      }
+
+      return newClient(credential, credential.getServiceAccountProjectId(), rootUrl);
+    });
+  }
+
+  /**
+   * Returns whether requests to the given endpoint must be authorized. Only the production
+   * endpoint requires it; other endpoints are called without credentials if the credentials
+   * file does not exist.
+   *
+   * @param credentialsFileLocation The location for the GCP service account key file.
+   * @param rootUrl The root URL of the Business Communications API.
+   */
+  static boolean requiresCredential(String credentialsFileLocation, String rootUrl) {
+    return Constants.API_URL.equals(rootUrl)
+        || BusinessCommunicationsApi.class.getResource("/" + credentialsFileLocation) != null;
+  }
+
+  /**
+   * Builds a new, uncached client on top of the shared transport.
+   *
+   * @param requestInitializer The initializer applied to every request, usually the credential.
+   * May be null when talking to a local server that does not check authorization.
+   * @param applicationName The application name sent in the User-Agent header.
+   * @param rootUrl The root URL of the Business Communications API.
+   * @return The new client.
+   */
+  public static BusinessCommunications newClient(HttpRequestInitializer requestInitializer,
+      String applicationName, String rootUrl) {
+    return newClient(getTransport(), requestInitializer, applicationName, rootUrl);
+  }
+
+  /**
+   * Builds a new, uncached client on top of the given transport.
+   *
+   * @param transport The transport to send requests with.
+   * @param requestInitializer The initializer applied to every request, usually the credential.
+   * May be null when talking to a local server that does not check authorization.
+   * @param applicationName The application name sent in the User-Agent header.
+   * @param rootUrl The root URL of the Business Communications API.
+   * @return The new client.
+   */
+  public static BusinessCommunications newClient(HttpTransport transport,
+      HttpRequestInitializer requestInitializer, String applicationName, String rootUrl) {
+    return new BusinessCommunications
+        .Builder(transport, JacksonFactory.getDefaultInstance(),
+            withRequestLayers(requestInitializer))
+        .setApplicationName(applicationName)
+        .setRootUrl(rootUrl)
+        .build();
+  }
+
+  /**
+   * Wraps the given initializer, usually the credential, with the layers every request passes
+   * through: connect and read timeouts, client-side rate limiting, retries of transient
+   * failures, and request metrics.
+   *
+   * @param requestInitializer The initializer to run first. May be null.
+   * @return The combined initializer.
+   */
+  static HttpRequestInitializer withRequestLayers(HttpRequestInitializer requestInitializer) {
+    return request -> {
+      if (requestInitializer != null) {
+        requestInitializer.initialize(request);
+      }
+
+      HttpTransports.applyTimeouts(request);
+      RequestThrottler.getInstance().initialize(request);
+      RetryPolicy.getInstance().initialize(request);
+      RequestMetrics.getInstance().initialize(request);
+    };
+  }
+
+  /**
+   * Returns the transport shared by every client, creating it on first use.
+   */
+  static HttpTransport getTransport() {
+    HttpTransport result = transport;
+    if (result == null) {
+      synchronized (BusinessCommunicationsClientFactory.class) {
+        result = transport;
+        if (result == null) {
+          try {
+            result = HttpTransports.create(HttpTransports.Backend.fromSystemProperty(),
+                GoogleUtils.getCertificateTrustStore());
+          } catch (Exception e) {
+            throw new IllegalStateException("Unable to create the HTTP transport", e);
+          }
+          transport = result;
+        }
+      }
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+
+/**
+ * Compares the cost of building a new client and transport for every request, which is what the
+ * samples used to do, against reusing the shared client from
+ * {@link BusinessCommunicationsClientFactory}. Requests are sent to a {@link LocalStubServer}, so
+ * no credentials are required.
+ * <p>
+ * Usage: mvn exec:java -Dexec.mainClass="...ClientSetupBenchmark" -Dexec.args="[REQUESTS]"
+ */
+public class ClientSetupBenchmark {
+
+  private static final String APPLICATION_NAME = "client-setup-benchmark";
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+
+    // Measure client overhead only, not the client-side rate limit
+    for (MethodFamily family : MethodFamily.values()) {
+      RequestThrottler.getInstance().setRequestsPerSecond(family, 0);
+    }
+
+    try (LocalStubServer server = new LocalStubServer(0)) {
+      String rootUrl = server.getRootUrl();
+
+      // Warm up both paths so class loading and JIT do not skew the first measurement
+      runPerCallClients(rootUrl, requests / 10 + 1);
+      runSharedClient(rootUrl, requests / 10 + 1);
+
+      long perCallNanos = runPerCallClients(rootUrl, requests);
+      long sharedNanos = runSharedClient(rootUrl, requests);
+
+      View.header("Client setup benchmark (" + requests + " requests)");
+      print("New transport and client per call", perCallNanos, requests);
+      print("Shared client", sharedNanos, requests);
+      System.out.printf("Speedup: %.1fx%n", (double) perCallNanos / sharedNanos);
+    }
+  }
+
+  private static long runPerCallClients(String rootUrl, int requests) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      BusinessCommunications client = new BusinessCommunications
+          .Builder(GoogleNetHttpTransport.newTrustedTransport(),
+              JacksonFactory.getDefaultInstance(), null)
+          .setApplicationName(APPLICATION_NAME)
+          .setRootUrl(rootUrl)
+          .build();
+
+      client.brands().get("brands/stub").execute();
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  private static long runSharedClient(String rootUrl, int requests) throws Exception {
+    BusinessCommunications client = BusinessCommunicationsClientFactory
+        .newClient(null, APPLICATION_NAME, rootUrl);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      client.brands().get("brands/stub").execute();
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  private static void print(String label, long nanos, int requests) {
+    System.out.printf("%-36s total %8.1f ms   %8.1f us/request%n",
+        label, nanos / 1e6, nanos / 1e3 / requests);
+  }
+}
@@ -21,4 +21,7 @@ public interface Constants {
     public static final String API_URL = "https://businesscommunications.googleapis.com/";
 
     public static final String EXCEPTION_WAS_THROWN = "exception";
+
+    // Number of items requested per page by the list samples
+    public static final int LIST_PAGE_SIZE = 100;
 }
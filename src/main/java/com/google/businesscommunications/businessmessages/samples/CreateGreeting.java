@@ -30,11 +30,11 @@ import java.util.*;
 
 public class CreateGreeting {
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String[] args) {
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     String brandId = "EDIT_HERE";
     String agentId = "EDIT_HERE";
@@ -65,8 +65,8 @@ public class CreateGreeting {
 
     // Build the request to create the greeting and execute it
     try {
-      BusinessCommunications.Brands.Agents.Greetings.Create request = builder
-          .build().brands().agents().greetings().create(agentName, greeting);
+      BusinessCommunications.Brands.Agents.Greetings.Create request = client
+          .brands().agents().greetings().create(agentName, greeting);
       
       greeting = request.execute();
 
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps an OAuth2 credential's access token fresh from a background thread.
+ * <p>
+ * The credential refreshes its token inline when a request finds it about to expire, which under
+ * concurrency stalls every thread that arrives at that moment. This manager refreshes the token
+ * a few minutes before it expires instead, so requests always find a valid token. Each manager
+ * runs a single chain of scheduled refreshes: every refresh schedules the next one, and a failed
+ * refresh is tried again after a short delay.
+ * <p>
+ * {@link Credential#refreshToken()} holds the credential's lock for the whole token request, and
+ * {@link Credential#intercept} takes the same lock on every API request. So the new token is
+ * fetched with a separate copy of the credential, and the shared credential is only locked to
+ * swap in the new token and expiry.
+ */
+public final class CredentialManager {
+
+  private static final Logger logger = Logger.getLogger(CredentialManager.class.getName());
+
+  // Refresh this long before the token expires; the credential refreshes inline at 60 seconds
+  private static final long REFRESH_MARGIN_SECONDS = 300;
+
+  // Delay before trying again after a failed refresh
+  private static final long RETRY_DELAY_SECONDS = 10;
+
+  private static final ScheduledExecutorService scheduler = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("credential-refresh").build());
+
+  // Every manager started in this JVM, for reporting
+  private static final List<CredentialManager> managers = new CopyOnWriteArrayList<>();
+
+  private final GoogleCredential credential;
+
+  // Fetches new tokens without holding the lock of the credential used by requests
+  private final GoogleCredential tokenFetcher;
+
+  // The next refresh of the chain, replaced whenever one is scheduled
+  private ScheduledFuture<?> scheduledRefresh;
+
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder totalLatencyMillis = new LongAdder();
+  private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+  private CredentialManager(GoogleCredential credential) {
+    this.credential = credential;
+    this.tokenFetcher = newTokenFetcher(credential);
+  }
+
+  /**
+   * Refreshes the credential's token now and keeps refreshing it in the background before it
+   * expires.
+   *
+   * @param credential The credential to manage.
+   * @return The manager of the credential.
+   * @throws IOException If the first refresh fails, in which case no background refresh is
+   * scheduled.
+   */
+  public static CredentialManager start(GoogleCredential credential) throws IOException {
+    CredentialManager manager = new CredentialManager(credential);
+    manager.refreshToken();
+
+    managers.add(manager);
+    manager.scheduleRefresh(manager.nextRefreshDelaySeconds());
+    return manager;
+  }
+
+  /**
+   * Returns a summary of token refreshes and their latency.
+   */
+  public String summary() {
+    long count = refreshes.sum();
+    return String.format("token refreshes %d  failures %d  avg latency %.1f ms  max %d ms%n",
+        count, failures.sum(), count == 0 ? 0.0 : (double) totalLatencyMillis.sum() / count,
+        maxLatencyMillis.get());
+  }
+
+  /**
+   * Returns the summaries of every credential manager started in this JVM.
+   */
+  public static String summaryOfAll() {
+    StringBuilder summary = new StringBuilder();
+    for (CredentialManager manager : managers) {
+      summary.append(manager.summary());
+    }
+
+    return summary.toString();
+  }
+
+  private void refreshToken() throws IOException {
+    long start = System.nanoTime();
+    try {
+      if (!tokenFetcher.refreshToken()) {
+        throw new IOException("The token server did not return a new access token");
+      }
+
+      // Each setter holds the credential's lock only briefly. A request that runs in between
+      // sees the new token with the old expiry, which is still minutes away.
+      credential.setAccessToken(tokenFetcher.getAccessToken());
+      credential.setExpirationTimeMilliseconds(tokenFetcher.getExpirationTimeMilliseconds());
+    } catch (IOException e) {
+      failures.increment();
+      throw e;
+    } finally {
+      long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      refreshes.increment();
+      totalLatencyMillis.add(latencyMillis);
+      maxLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+    }
+  }
+
+  /**
+   * Runs one scheduled refresh and schedules the next.
+   */
+  private void refresh() {
+    long delaySeconds;
+    try {
+      refreshToken();
+      delaySeconds = nextRefreshDelaySeconds();
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Access token refresh failed, retrying in "
+          + RETRY_DELAY_SECONDS + " seconds", e);
+      delaySeconds = RETRY_DELAY_SECONDS;
+    }
+
+    scheduleRefresh(delaySeconds);
+  }
+
+  private long nextRefreshDelaySeconds() {
+    Long expiresInSeconds = credential.getExpiresInSeconds();
+    return expiresInSeconds == null
+        ? RETRY_DELAY_SECONDS
+        : Math.max(RETRY_DELAY_SECONDS, expiresInSeconds - REFRESH_MARGIN_SECONDS);
+  }
+
+  private synchronized void scheduleRefresh(long delaySeconds) {
+    // Replacing the pending refresh keeps the manager to a single chain
+    if (scheduledRefresh != null) {
+      scheduledRefresh.cancel(false);
+    }
+    scheduledRefresh = scheduler.schedule(this::refresh, delaySeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Returns a credential for the same account that shares no state with the given one.
+   */
+  private static GoogleCredential newTokenFetcher(GoogleCredential credential) {
+    if (credential.getServiceAccountPrivateKey() != null) {
+      // Builds a new credential for the same service account and scopes
+      return credential.createScoped(credential.getServiceAccountScopes());
+    }
+
+    GoogleCredential fetcher = new GoogleCredential.Builder()
+        .setTransport(credential.getTransport())
+        .setJsonFactory(credential.getJsonFactory())
+        .setTokenServerEncodedUrl(credential.getTokenServerEncodedUrl())
+        .setClientAuthentication(credential.getClientAuthentication())
+        .build();
+    fetcher.setRefreshToken(credential.getRefreshToken());
+    return fetcher;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.util.BackOff;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Back-off with "decorrelated jitter": each delay is drawn uniformly between the base delay and
+ * three times the previous delay, capped at a maximum.
+ * <p>
+ * Unlike plain exponential back-off, clients that failed at the same moment quickly spread out
+ * instead of retrying in lockstep, which avoids synchronized retry storms against the API.
+ */
+public class DecorrelatedJitterBackOff implements BackOff {
+
+  private final long baseMillis;
+  private final long maxMillis;
+  private long previousMillis;
+
+  /**
+   * @param baseMillis The minimum delay, also used as the first upper bound.
+   * @param maxMillis The largest delay ever returned.
+   */
+  public DecorrelatedJitterBackOff(long baseMillis, long maxMillis) {
+    this.baseMillis = baseMillis;
+    this.maxMillis = maxMillis;
+    this.previousMillis = baseMillis;
+  }
+
+  @Override
+  public void reset() {
+    previousMillis = baseMillis;
+  }
+
+  @Override
+  public long nextBackOffMillis() {
+    long upperBound = Math.max(baseMillis + 1, Math.min(maxMillis, previousMillis * 3));
+    previousMillis = ThreadLocalRandom.current().nextLong(baseMillis, upperBound);
+    return previousMillis;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.Key;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The desired state of an account, read from a JSON file: brands, their agents and locations,
+ * and each agent's greetings.
+ * <p>
+ * Resources are identified by natural keys rather than by server-assigned names: brands and
+ * agents by display name, locations by Place ID and greetings by custom ID. For example:
+ * <pre>
+ * {
+ *   "brands": [{
+ *     "displayName": "Growing Tree Bank",
+ *     "agents": [{
+ *       "agent": {"displayName": "Growing Tree Support", "businessMessagesAgent": {...}},
+ *       "greetings": [{"customId": "spring", "locale": "en", "welcomeMessages": [...]}]
+ *     }],
+ *     "locations": [{
+ *       "agentDisplayName": "Growing Tree Support",
+ *       "location": {"placeId": "ChIJj61dQgK6j4AR4GeTYWZsKWw", "defaultLocale": "en"}
+ *     }]
+ *   }]
+ * }
+ * </pre>
+ */
+public class DesiredState extends GenericJson {
+
+  @Key
+  public List<DesiredBrand> brands;
+
+  /**
+   * A brand and everything under it.
+   */
+  public static class DesiredBrand extends GenericJson {
+
+    @Key
+    public String displayName;
+
+    @Key
+    public List<DesiredAgent> agents;
+
+    @Key
+    public List<DesiredLocation> locations;
+  }
+
+  /**
+   * An agent and its greetings. The agent's display name identifies it within the brand.
+   */
+  public static class DesiredAgent extends GenericJson {
+
+    @Key
+    public Agent agent;
+
+    @Key
+    public List<Greeting> greetings;
+  }
+
+  /**
+   * A location, attached to the agent with the given display name in the same brand.
+   */
+  public static class DesiredLocation extends GenericJson {
+
+    @Key
+    public String agentDisplayName;
+
+    @Key
+    public Location location;
+  }
+
+  /**
+   * Reads a desired state file.
+   */
+  public static DesiredState load(String file) throws IOException {
+    try (InputStream in = Files.newInputStream(Paths.get(file))) {
+      return JacksonFactory.getDefaultInstance()
+          .fromInputStream(in, StandardCharsets.UTF_8, DesiredState.class);
+    }
+  }
+}
@@ -29,11 +29,11 @@ import java.util.*;
 
 public class GetAgent {
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String[] args) {
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     String brandId = "EDIT_HERE";
     String agentId = "EDIT_HERE";
@@ -45,8 +45,8 @@ public class GetAgent {
     Agent agent = null;
 
     try {
-      BusinessCommunications.Brands.Agents.Get request = builder
-          .build().brands().agents().get(agentName);
+      BusinessCommunications.Brands.Agents.Get request = client
+          .brands().agents().get(agentName);
 
       agent = request.execute();
       System.out.println(agent.toPrettyString());
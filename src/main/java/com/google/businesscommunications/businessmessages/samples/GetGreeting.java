@@ -30,11 +30,11 @@ import java.util.*;
 
 public class GetGreeting {
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String[] args) {
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     String brandId = "EDIT_HERE";
     String agentId = "EDIT_HERE";
@@ -45,8 +45,8 @@ public class GetGreeting {
 
     // Build the request to get the greeting object and execute it
     try {
-      BusinessCommunications.Brands.Agents.Greetings.Get request = builder
-          .build().brands().agents().greetings().get(greetingName);
+      BusinessCommunications.Brands.Agents.Greetings.Get request = client
+          .brands().agents().greetings().get(greetingName);
 
       Greeting greeting = request.execute();
 
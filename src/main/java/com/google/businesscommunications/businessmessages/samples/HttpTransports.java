@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Creates the HTTP transport used by every client.
+ * <p>
+ * Two backends are available, selected with the {@code bc.transport} system property:
+ * <ul>
+ * <li>{@code apache} (default): Apache HttpClient with a thread-safe connection pool of
+ * {@code bc.transport.maxConnections} (default 200) connections and a background thread that
+ * evicts connections idle for more than {@code bc.transport.idleTimeoutSeconds} (60).</li>
+ * <li>{@code netHttp}: HttpURLConnection. It is not pooled by this class: the JDK keeps up to
+ * {@code http.maxConnections} (default 5) idle connections per host in a JVM-wide keep-alive
+ * cache. That property is read once, by the first HttpURLConnection in the JVM (the OAuth token
+ * request is usually one), so it only takes effect when set on the command line.</li>
+ * </ul>
+ * <p>
+ * Neither backend speaks HTTP/2 on the Java 8 runtime this project targets.
+ * <p>
+ * Both backends use {@code bc.transport.connectTimeoutMillis} (default 20000) and
+ * {@code bc.transport.readTimeoutMillis} (20000).
+ */
+public final class HttpTransports {
+
+  private static final Logger logger = Logger.getLogger(HttpTransports.class.getName());
+
+  /**
+   * The available transport backends.
+   */
+  public enum Backend {
+    NET_HTTP("netHttp"),
+    APACHE("apache");
+
+    private final String propertyValue;
+
+    Backend(String propertyValue) {
+      this.propertyValue = propertyValue;
+    }
+
+    /**
+     * Returns the backend named by the {@code bc.transport} system property.
+     */
+    public static Backend fromSystemProperty() {
+      String configured = System.getProperty("bc.transport", APACHE.propertyValue);
+      for (Backend backend : values()) {
+        if (backend.propertyValue.equalsIgnoreCase(configured)) {
+          return backend;
+        }
+      }
+
+      throw new IllegalArgumentException("Unknown bc.transport value: " + configured);
+    }
+  }
+
+  private static final int MAX_CONNECTIONS = Integer.getInteger("bc.transport.maxConnections", 200);
+  private static final int IDLE_TIMEOUT_SECONDS
+      = Integer.getInteger("bc.transport.idleTimeoutSeconds", 60);
+  private static final int CONNECT_TIMEOUT_MILLIS
+      = Integer.getInteger("bc.transport.connectTimeoutMillis", 20_000);
+  private static final int READ_TIMEOUT_MILLIS
+      = Integer.getInteger("bc.transport.readTimeoutMillis", 20_000);
+
+  private static final ScheduledExecutorService evictionExecutor
+      = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("idle-connection-evictor").build());
+
+  private HttpTransports() {
+  }
+
+  /**
+   * Creates a transport for the given backend that trusts the certificates in the trust store.
+   *
+   * @param backend The backend to use.
+   * @param trustStore The certificates to trust for HTTPS, e.g. GoogleUtils'
+   * certificate trust store.
+   * @return A new transport, safe to share between threads.
+   */
+  public static HttpTransport create(Backend backend, KeyStore trustStore)
+      throws GeneralSecurityException {
+    switch (backend) {
+      case NET_HTTP:
+        logger.info("Creating " + backend + " transport; idle connections are kept up to "
+            + "http.maxConnections=" + System.getProperty("http.maxConnections", "5"));
+        return new NetHttpTransport.Builder().trustCertificates(trustStore).build();
+      case APACHE:
+      default:
+        logger.info("Creating " + backend + " transport with up to " + MAX_CONNECTIONS
+            + " pooled connections");
+        return createApacheTransport(trustStore);
+    }
+  }
+
+  /**
+   * Applies the configured connect and read timeouts to a request.
+   */
+  static void applyTimeouts(HttpRequest request) {
+    request.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    request.setReadTimeout(READ_TIMEOUT_MILLIS);
+  }
+
+  private static HttpTransport createApacheTransport(KeyStore trustStore)
+      throws GeneralSecurityException {
+    ApacheHttpTransport.Builder builder = new ApacheHttpTransport.Builder()
+        .trustCertificates(trustStore);
+
+    // All traffic goes to a single host, so the per-route limit is the pool size
+    HttpParams params = builder.getHttpParams();
+    ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS));
+    ConnManagerParams.setTimeout(params, CONNECT_TIMEOUT_MILLIS);
+    HttpConnectionParams.setTcpNoDelay(params, true);
+
+    ApacheHttpTransport transport = builder.build();
+
+    ClientConnectionManager connectionManager = transport.getHttpClient().getConnectionManager();
+    long evictionPeriodSeconds = Math.max(1, IDLE_TIMEOUT_SECONDS / 2);
+    evictionExecutor.scheduleWithFixedDelay(() -> {
+      connectionManager.closeExpiredConnections();
+      connectionManager.closeIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }, evictionPeriodSeconds, evictionPeriodSeconds, TimeUnit.SECONDS);
+
+    return transport;
+  }
+}
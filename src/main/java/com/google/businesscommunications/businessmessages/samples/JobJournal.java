@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.Key;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only journal of the operations of a long-running job, so that a restarted job can
+ * skip the work that is already done.
+ * <p>
+ * Each operation is identified by a key: a resource name, or an idempotency key chosen by the
+ * caller for creates, whose resource name is not known in advance. The journal records when an
+ * operation starts and how it ended, one JSON line per event. When the journal is opened, the
+ * last event of every key is read back: keys that are done are skipped by the job, and keys
+ * that failed or were still in flight when the job stopped are tried again.
+ * <p>
+ * The journal is written ahead: {@link #started} returns only once the event is synced to disk,
+ * so every request that may have reached the server is on record. Idempotent operations can
+ * skip the wait with {@link #startedIdempotent}. Threads that start operations at the same time
+ * share one sync, and other threads keep appending while the file is forced to disk. Done and
+ * failed events are buffered and synced in groups, at most {@code bc.journal.syncMillis}
+ * (default 50) apart or every {@code bc.journal.syncEvery} (default 1000) events, so a crash can
+ * lose at most the latest group. A key whose outcome was lost stays started, and since its
+ * request may have taken effect, a job should look for the effect before repeating it (see
+ * {@link #isUnconfirmed}). A torn last line from a crash is ignored.
+ */
+public final class JobJournal implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(JobJournal.class.getName());
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private static final long SYNC_MILLIS = Long.getLong("bc.journal.syncMillis", 50);
+  private static final int SYNC_EVERY = Integer.getInteger("bc.journal.syncEvery", 1000);
+
+  /**
+   * The state of an operation.
+   */
+  public enum State {
+    STARTED,
+    DONE,
+    FAILED
+  }
+
+  /**
+   * One journal line.
+   */
+  public static class Event extends GenericJson {
+
+    @Key
+    public String key;
+
+    @Key
+    public String state;
+
+    // The resource name when done, or the error when failed
+    @Key
+    public String detail;
+
+    @Key
+    public Long time;
+  }
+
+  private final Path file;
+  private final FileOutputStream fileStream;
+  private final BufferedOutputStream out;
+  private final ScheduledExecutorService syncer;
+
+  // The last event of every key, from earlier runs and this one
+  private final Map<String, Event> lastEvents = new ConcurrentHashMap<>();
+
+  // Guards the buffered stream and the counters below. A sync flushes under the lock but
+  // forces the file to disk outside it, so appends go on during the force.
+  private final Object lock = new Object();
+  // Events appended since the last flush
+  private int unsynced;
+  private long syncs;
+  private long events;
+  // The number of this run's events on disk
+  private long syncedEvents;
+  // Whether a thread is forcing the file to disk; others wait for it on the lock
+  private boolean syncing;
+
+  private final int resumedDone;
+  private final int resumedPending;
+
+  private JobJournal(Path file) throws IOException {
+    this.file = file;
+    int done = 0;
+    if (Files.exists(file)) {
+      done = replay(file);
+    }
+    this.resumedDone = done;
+    this.resumedPending = lastEvents.size() - done;
+
+    this.fileStream = new FileOutputStream(file.toFile(), true);
+    this.out = new BufferedOutputStream(fileStream, 64 * 1024);
+
+    // Start on a new line if the last run stopped in the middle of one
+    if (endsMidLine(file)) {
+      out.write('\n');
+    }
+    this.syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("job-journal-sync").build());
+    this.syncer.scheduleWithFixedDelay(this::syncQuietly, SYNC_MILLIS, SYNC_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens a journal, reading back the events of earlier runs if the file exists.
+   */
+  public static JobJournal open(Path file) throws IOException {
+    return new JobJournal(file);
+  }
+
+  /**
+   * Returns true if the operation completed in this or an earlier run.
+   */
+  public boolean isDone(String key) {
+    return getState(key) == State.DONE;
+  }
+
+  /**
+   * Returns the last recorded state of the operation, or null if it was never started.
+   */
+  public State getState(String key) {
+    Event event = lastEvents.get(key);
+    return event == null ? null : State.valueOf(event.state);
+  }
+
+  /**
+   * Returns the detail of the last event of the operation: the resource name for a completed
+   * operation, or the error for a failed one.
+   */
+  public String getDetail(String key) {
+    Event event = lastEvents.get(key);
+    return event == null ? null : event.detail;
+  }
+
+  /**
+   * Returns true if the operation was started, in an earlier run or this one, and is not recorded
+   * as done. Its request may have reached the server even if it is recorded as failed, for
+   * example after a timeout, so its effect should be looked for before it is sent again.
+   */
+  public boolean isUnconfirmed(String key) {
+    State state = getState(key);
+    return state == State.STARTED || state == State.FAILED;
+  }
+
+  /**
+   * Returns the keys whose operations completed.
+   */
+  public Set<String> getDoneKeys() {
+    Set<String> done = ConcurrentHashMap.newKeySet();
+    for (Map.Entry<String, Event> entry : lastEvents.entrySet()) {
+      if (State.DONE.name().equals(entry.getValue().state)) {
+        done.add(entry.getKey());
+      }
+    }
+
+    return done;
+  }
+
+  /**
+   * Records that an operation is about to be sent, and returns once the record is on disk.
+   */
+  public void started(String key) {
+    long sequence = append(key, State.STARTED, null);
+    try {
+      syncThrough(sequence);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not sync the journal " + file, e);
+    }
+  }
+
+  /**
+   * Records that an idempotent operation, such as a delete, is about to be sent. The record is
+   * synced with the next group rather than right away, since repeating the operation after a
+   * crash does no harm.
+   */
+  public void startedIdempotent(String key) {
+    append(key, State.STARTED, null);
+  }
+
+  /**
+   * Records that an operation completed.
+   *
+   * @param detail The name of the resource it created or changed, if any.
+   */
+  public void done(String key, String detail) {
+    append(key, State.DONE, detail);
+  }
+
+  /**
+   * Records that an operation failed. It is tried again when the job is restarted.
+   */
+  public void failed(String key, String error) {
+    append(key, State.FAILED, error);
+  }
+
+  /**
+   * Writes and syncs every recorded event to disk.
+   */
+  public void sync() throws IOException {
+    long appended;
+    synchronized (lock) {
+      appended = events;
+    }
+    syncThrough(appended);
+  }
+
+  /**
+   * Returns what was resumed from earlier runs and how many events this run recorded.
+   */
+  public String summary() {
+    synchronized (lock) {
+      return String.format("journal %s: resumed %d done, %d to retry; %d events, %d syncs%n",
+          file, resumedDone, resumedPending, events, syncs);
+    }
+  }
+
+  /**
+   * Syncs the remaining events and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    syncer.shutdownNow();
+    sync();
+    synchronized (lock) {
+      out.close();
+    }
+  }
+
+  /**
+   * Appends an event and returns its sequence number in this run.
+   */
+  private long append(String key, State state, String detail) {
+    Event event = new Event();
+    event.key = key;
+    event.state = state.name();
+    event.detail = detail;
+    event.time = System.currentTimeMillis();
+
+    try {
+      byte[] line = jsonFactory.toByteArray(event);
+      long sequence;
+      boolean syncDue;
+      synchronized (lock) {
+        out.write(line);
+        out.write('\n');
+        lastEvents.put(key, event);
+        sequence = ++events;
+        syncDue = ++unsynced >= SYNC_EVERY;
+      }
+      if (syncDue) {
+        syncThrough(sequence);
+      }
+      return sequence;
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write to the journal " + file, e);
+    }
+  }
+
+  /**
+   * Returns once the first {@code sequence} events of this run are on disk. One thread at a time
+   * flushes the buffer and forces the file; threads that arrive meanwhile wait for it, and are
+   * done if its force covered their events.
+   */
+  private void syncThrough(long sequence) throws IOException {
+    long flushed;
+    synchronized (lock) {
+      while (syncing && syncedEvents < sequence) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for a journal sync");
+        }
+      }
+      if (syncedEvents >= sequence) {
+        return;
+      }
+
+      out.flush();
+      flushed = events;
+      unsynced = 0;
+      syncing = true;
+    }
+
+    boolean forced = false;
+    try {
+      fileStream.getChannel().force(false);
+      forced = true;
+    } finally {
+      synchronized (lock) {
+        syncing = false;
+        if (forced) {
+          syncedEvents = flushed;
+          syncs++;
+        }
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private void syncQuietly() {
+    try {
+      sync();
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
+    }
+  }
+
+  private static boolean endsMidLine(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() == 0) {
+        return false;
+      }
+
+      ByteBuffer last = ByteBuffer.allocate(1);
+      channel.read(last, channel.size() - 1);
+      return last.get(0) != '\n';
+    }
+  }
+
+  private static boolean isState(String state) {
+    for (State value : State.values()) {
+      if (value.name().equals(state)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Reads the events of earlier runs and returns the number of keys that are done.
+   */
+  private int replay(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        Event event = null;
+        try {
+          event = jsonFactory.fromString(line, Event.class);
+        } catch (IOException | IllegalArgumentException e) {
+          // A crash can leave the last line half written
+        }
+
+        if (event == null || event.key == null || !isState(event.state)) {
+          logger.warning("Ignoring unreadable journal line " + lineNumber + " of " + file);
+        } else {
+          lastEvents.put(event.key, event);
+        }
+      }
+    }
+
+    int done = 0;
+    for (Event event : lastEvents.values()) {
+      if (State.DONE.name().equals(event.state)) {
+        done++;
+      }
+    }
+
+    return done;
+  }
+}
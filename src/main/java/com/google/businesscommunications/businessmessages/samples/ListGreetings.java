@@ -29,26 +29,24 @@ import java.util.*;
 
 public class ListGreetings {
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String[] args) {
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
     
     String brandId = "EDIT_HERE";
     String agentId = "EDIT_HERE";
 
     String agentName = "brands/" + brandId + "/agents/" + agentId;
 
-    // Build the request to get the greeting object and execute it
-    try {
-      BusinessCommunications.Brands.Agents.Greetings.List request = builder
-          .build().brands().agents().greetings().list(agentName);
-
-      ListGreetingsResponse greetings = request.execute();
-
-      // Print the response and display the contents of the greeting
-      System.out.println(greetings.toPrettyString());
+    // Page through all of the agent's greetings and print each one
+    try (PagedIterator<ListGreetingsResponse, Greeting> greetings
+        = Pagination.greetings(client, agentName, Constants.LIST_PAGE_SIZE);
+        StreamingJsonWriter writer = StreamingJsonWriter.toStandardOutput()) {
+      while (greetings.hasNext()) {
+        writer.write(greetings.next());
+      }
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -14,6 +14,8 @@
 package com.google.businesscommunications.businessmessages.samples;
 
 import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.ListSurveyQuestionsResponse;
+import com.google.api.services.businesscommunications.v1.model.SurveyQuestion;
 
 import java.io.IOException;
 import java.util.*;
@@ -25,21 +27,21 @@ import java.util.logging.Logger;
  */
 public class ListSurveyQuestions {
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
   private static final Logger logger = Logger.getLogger(BrandSample.class.getName());
 
   public static void main(String[] args) {
 
     View.header("Fetching template survey questions");
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
-    try {
-      // Produce a request builder for sending a request to /v1/surveyQuestions.
-      BusinessCommunications.SurveyQuestions.List request = builder.build().surveyQuestions().list();
-
-      // Execute the request.
-      System.out.println(request.execute());
+    // Page through /v1/surveyQuestions and print each question
+    try (PagedIterator<ListSurveyQuestionsResponse, SurveyQuestion> questions
+        = Pagination.surveyQuestions(client, Constants.LIST_PAGE_SIZE)) {
+      while (questions.hasNext()) {
+        System.out.println(questions.next());
+      }
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+
+/**
+ * A minimal HTTP or HTTPS server bound to the loopback interface that answers every request with
+ * the same canned JSON body. Used by the benchmarks to measure client-side overhead without network
+ * variance.
+ */
+public class LocalStubServer implements AutoCloseable {
+
+  static {
+    // Write responses without waiting on Nagle's algorithm, otherwise every response on a
+    // kept-alive connection stalls for the client's delayed ACK timeout
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private static final byte[] DEFAULT_BODY
+      = "{\"name\":\"brands/stub\",\"displayName\":\"Stub Brand\"}".getBytes(StandardCharsets.UTF_8);
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final byte[] body;
+  private final long latencyMillis;
+
+  /**
+   * Starts a stub server on an ephemeral port.
+   *
+   * @param latencyMillis Artificial delay added before each response is written.
+   */
+  public LocalStubServer(long latencyMillis) throws IOException {
+    this(latencyMillis, DEFAULT_BODY);
+  }
+
+  /**
+   * Starts a stub server on an ephemeral port.
+   *
+   * @param latencyMillis Artificial delay added before each response is written.
+   * @param body The JSON body returned for every request.
+   */
+  public LocalStubServer(long latencyMillis, byte[] body) throws IOException {
+    this(latencyMillis, body, null);
+  }
+
+  /**
+   * Starts a stub server on an ephemeral port.
+   *
+   * @param latencyMillis Artificial delay added before each response is written.
+   * @param body The JSON body returned for every request.
+   * @param sslContext The server certificate to serve HTTPS with, or null to serve plain HTTP.
+   * The certificate should be issued for "localhost".
+   */
+  public LocalStubServer(long latencyMillis, byte[] body, SSLContext sslContext)
+      throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.body = body;
+    // On virtual threads, thousands of delayed responses do not cost an OS thread each
+    this.executor = TaskExecutors.isVirtualThreadSupported()
+        ? TaskExecutors.newExecutor(TaskExecutors.Mode.VIRTUAL, 1, "stub-server-%d")
+        : Executors.newCachedThreadPool();
+
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    if (sslContext == null) {
+      this.server = HttpServer.create(address, 0);
+    } else {
+      HttpsServer httpsServer = HttpsServer.create(address, 0);
+      httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+      this.server = httpsServer;
+    }
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(executor);
+    this.server.start();
+  }
+
+  /**
+   * Returns the root URL to pass to the client builder, ending with a slash.
+   */
+  public String getRootUrl() {
+    // HTTPS uses the host name so that it matches the certificate
+    return server instanceof HttpsServer
+        ? "https://localhost:" + server.getAddress().getPort() + "/"
+        : "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+            + "/";
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      byte[] buffer = new byte[8192];
+      while (in.read(buffer) != -1) {
+        // Drain the request body so the connection can be reused
+      }
+    }
+
+    if (latencyMillis > 0) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -16,6 +16,7 @@ package com.google.businesscommunications.businessmessages.samples;
 import com.google.api.services.businesscommunications.v1.BusinessCommunications;
 import com.google.api.services.businesscommunications.v1.model.ConversationStarters;
 import com.google.api.services.businesscommunications.v1.model.ConversationalSetting;
+import com.google.api.services.businesscommunications.v1.model.ListLocationsResponse;
 import com.google.api.services.businesscommunications.v1.model.Location;
 import com.google.api.services.businesscommunications.v1.model.LocationEntryPointConfig;
 import com.google.api.services.businesscommunications.v1.model.OfflineMessage;
@@ -25,7 +26,6 @@ import com.google.api.services.businesscommunications.v1.model.SuggestedAction;
 import com.google.api.services.businesscommunications.v1.model.SuggestedReply;
 import com.google.api.services.businesscommunications.v1.model.Suggestion;
 import com.google.api.services.businesscommunications.v1.model.WelcomeMessage;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -48,7 +48,7 @@ public class LocationSample {
 
   private static final Logger logger = Logger.getLogger(BrandSample.class.getName());
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String args[]) {
     if (args.length != 1) {
@@ -74,24 +74,30 @@ public class LocationSample {
 
     View.header("Location script for brand: " + brandName + " and agent: " + agentName);
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     // Create a location
     View.header("Create Location:");
-    Location location = createLocation(brandName, agentName);
+    Location location = View.requireResult(createLocation(brandName, agentName),
+        "create the location");
 
-    View.printBreak(5);
+    View.awaitCreated(5, location.getName(),
+        name -> client.brands().locations().get(name).execute());
 
     // Get location details
     View.header("Get Location Details:");
-    location = getLocation(location.getName());
+    location = View.requireResult(getLocation(location.getName()), "get the location");
+    System.out.print(ResourceCaches.LOCATIONS.summary());
 
     View.printBreak(3);
 
     // Update the location
     // NOTE: This call will fail unless the agentId parameter is a valid agentId
     View.header("Updating Location:");
-    location = updateLocation(location, "/brands/BRAND_ID/agents/AGENT_ID");
+    Location updatedLocation = updateLocation(location, "/brands/BRAND_ID/agents/AGENT_ID");
+    if (updatedLocation != null) {
+      location = updatedLocation;
+    }
 
     View.printBreak(3);
 
@@ -148,8 +154,8 @@ public class LocationSample {
             .setConversationStarters(conversationStarters));
       }};
 
-      BusinessCommunications.Brands.Locations.Create request = builder
-          .build().brands().locations().create(brandName,
+      BusinessCommunications.Brands.Locations.Create request = client
+          .brands().locations().create(brandName,
               new Location()
                   .setDefaultLocale("en")
                   .setAgent(agentName)
@@ -158,6 +164,7 @@ public class LocationSample {
                   .setLocationEntryPointConfigs(locationEntryPointConfigs));
 
       location = request.execute();
+      ResourceCaches.LOCATIONS.put(location);
 
       System.out.println(location.toPrettyString());
     } catch (Exception e) {
@@ -177,15 +184,12 @@ public class LocationSample {
   private static Location updateLocation(Location location, String agentName) {
     Location updatedLocation = null;
     try {
-      // Update the location object's associated agent
-      location.setAgent(agentName);
-
-      BusinessCommunications.Brands.Locations.Patch request = builder
-          .build().brands().locations().patch(location.getName(), location);
-
-      request.setUpdateMask("agent");
+      // Update a copy of the location object's associated agent
+      Location desiredLocation = location.clone().setAgent(agentName);
 
-      updatedLocation = request.execute();
+      // Sends only the agent field, with a matching update mask
+      updatedLocation = UpdateMasks.patchLocation(client, location, desiredLocation);
+      ResourceCaches.LOCATIONS.put(updatedLocation);
 
       System.out.println(updatedLocation.toPrettyString());
     } catch (Exception e) {
@@ -196,7 +200,9 @@ public class LocationSample {
   }
 
   /**
-   * Based on the location name, looks up the location details.
+   * Based on the location name, looks up the location details. The location is served
+   * from the local cache when it was read or written recently, unless {@code bc.cache.bypass} is
+   * set.
    *
    * @param locationName The unique identifier for the location in "brands/BRAND_ID/locations/LOCATION_ID"
    * format.
@@ -205,10 +211,8 @@ public class LocationSample {
   private static Location getLocation(String locationName) {
     Location location = null;
     try {
-      BusinessCommunications.Brands.Locations.Get request = builder
-          .build().brands().locations().get(locationName);
-
-      location = request.execute();
+      location = ResourceCaches.LOCATIONS.get(locationName,
+          name -> client.brands().locations().get(name).execute());
 
       System.out.println(location.toPrettyString());
     } catch (Exception e) {
@@ -219,23 +223,18 @@ public class LocationSample {
   }
 
   /**
-   * Lists all locations for given brand.
+   * Lists all locations for given brand, following page tokens until every location has been
+   * printed.
    *
    * @param brandName The unique identifier for the brand.
    */
   private static void listLocations(String brandName) {
-    try {
-      BusinessCommunications.Brands.Locations.List request
-          = builder.build().brands().locations().list(brandName);
-
-      List<Location> locations = request.execute().getLocations();
-      locations.stream().forEach(location -> {
-        try {
-          System.out.println(location.toPrettyString());
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      });
+    try (PagedIterator<ListLocationsResponse, Location> locations
+        = Pagination.locations(client, brandName, Constants.LIST_PAGE_SIZE);
+        StreamingJsonWriter writer = StreamingJsonWriter.toStandardOutput()) {
+      while (locations.hasNext()) {
+        writer.write(locations.next());
+      }
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
@@ -250,10 +249,11 @@ public class LocationSample {
    */
   private static void deleteLocation(String locationName) {
     try {
-      BusinessCommunications.Brands.Locations.Delete request = builder.build().brands().locations()
+      BusinessCommunications.Brands.Locations.Delete request = client.brands().locations()
           .delete(locationName);
 
       System.out.println(request.execute());
+      ResourceCaches.LOCATIONS.invalidate(locationName);
     } catch (Exception e) {
       logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
     }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.http.GenericUrl;
+
+/**
+ * The resource collections of the Business Communications API. Quotas, rate limits and metrics
+ * are tracked per family.
+ */
+public enum MethodFamily {
+  BRANDS("brands"),
+  AGENTS("agents"),
+  LOCATIONS("locations"),
+  GREETINGS("greetings"),
+  SURVEY_QUESTIONS("surveyQuestions");
+
+  private final String collection;
+
+  MethodFamily(String collection) {
+    this.collection = collection;
+  }
+
+  /**
+   * Returns the collection name used in resource paths, e.g. "agents".
+   */
+  public String getCollection() {
+    return collection;
+  }
+
+  /**
+   * Returns the family of the innermost collection in the request URL, e.g. GREETINGS for
+   * "/v1/brands/1/agents/2/greetings/3", or null if the URL does not address a known collection.
+   */
+  public static MethodFamily fromUrl(GenericUrl url) {
+    return fromPath(url.getRawPath());
+  }
+
+  /**
+   * Returns the family of the innermost collection in the given resource path, or null if the
+   * path does not address a known collection.
+   */
+  public static MethodFamily fromPath(String path) {
+    if (path == null) {
+      return null;
+    }
+
+    MethodFamily family = null;
+    for (String segment : path.split("/")) {
+      for (MethodFamily candidate : values()) {
+        if (candidate.collection.equals(segment)) {
+          family = candidate;
+        }
+      }
+    }
+
+    return family;
+  }
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in for the Business Communications API, for load and latency testing
+ * without touching production.
+ * <p>
+ * Brands, agents, locations, and greetings are kept in memory and support create, get, list,
+ * patch (honoring the update mask), and delete. Deleting a brand deletes everything under it.
+ * {@code surveyQuestions} lists a fixed set of template questions. Lists are paginated with
+ * {@code pageSize} and {@code pageToken}. Multipart batch requests to {@code /batch} are
+ * answered part by part. Other methods answer 404.
+ * <p>
+ * Every response can be delayed by a fixed latency, and a configurable fraction of requests is
+ * answered with 503 or with 429 and a Retry-After header. A request-per-second quota can also
+ * be set, beyond which requests are answered with 429. The failures are drawn from a seeded
+ * random generator, so a run with the same seed and request order fails the same requests.
+ * <p>
+ * To point the samples at the server, pass its root URL in the {@code bc.rootUrl} system
+ * property. Credentials are then optional.
+ * <p>
+ * Usage: mvn exec:java -Dexec.mainClass="...MockBusinessCommunicationsServer"
+ * -Dexec.args="[PORT] [LATENCY_MS] [ERROR_RATE] [THROTTLE_RATE] [MAX_QPS]"
+ */
+public class MockBusinessCommunicationsServer implements AutoCloseable {
+
+  private static final Logger logger = Logger
+      .getLogger(MockBusinessCommunicationsServer.class.getName());
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  // Seconds a throttled client is asked to wait
+  private static final int RETRY_AFTER_SECONDS = 1;
+
+  // Collections that can be listed and created in
+  private static final Pattern COLLECTION = Pattern.compile(
+      "brands|brands/[^/]+/(agents|locations)|brands/[^/]+/agents/[^/]+/greetings");
+
+  private static final List<String> TEMPLATE_QUESTION_IDS = Arrays.asList(
+      "GOOGLE_DEFINED_ASSOCIATE_SATISFACTION",
+      "GOOGLE_DEFINED_CUSTOMER_EFFORT_ALTERNATIVE",
+      "GOOGLE_DEFINED_ASSOCIATE_KNOWLEDGEABLE",
+      "GOOGLE_DEFINED_ASSOCIATE_FRIENDLY",
+      "GOOGLE_DEFINED_ASSOCIATE_HELPFUL");
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  // Resources keyed by name; sorted so that list pages and cascading deletes are range scans
+  // Creates, patches and deletes lock it, so each sees the others' changes as a whole
+  private final ConcurrentSkipListMap<String, Map<String, Object>> store
+      = new ConcurrentSkipListMap<>();
+
+  private final Random random;
+
+  private volatile long latencyMillis;
+  private volatile double errorRate;
+  private volatile double throttleRate;
+  private volatile int maxRequestsPerSecond;
+
+  private final AtomicLong quotaSecond = new AtomicLong();
+  private final AtomicLong quotaUsed = new AtomicLong();
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder injectedErrors = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+
+  /**
+   * The status and JSON body of a response.
+   */
+  private static final class Response {
+
+    private final int code;
+    private final Object body;
+
+    private Response(int code, Object body) {
+      this.code = code;
+      this.body = body;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+
+    MockBusinessCommunicationsServer server = new MockBusinessCommunicationsServer(port, 0);
+    server.setLatencyMillis(args.length > 1 ? Long.parseLong(args[1]) : 0);
+    server.setErrorRate(args.length > 2 ? Double.parseDouble(args[2]) : 0);
+    server.setThrottleRate(args.length > 3 ? Double.parseDouble(args[3]) : 0);
+    server.setMaxRequestsPerSecond(args.length > 4 ? Integer.parseInt(args[4]) : 0);
+
+    View.header("Mock Business Communications API");
+    System.out.println("Listening on " + server.getRootUrl());
+    System.out.println("Run the samples with -Dbc.rootUrl=" + server.getRootUrl());
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(server.summary())));
+  }
+
+  /**
+   * Starts a mock server on an ephemeral port.
+   */
+  public MockBusinessCommunicationsServer() throws IOException {
+    this(0, 0);
+  }
+
+  /**
+   * Starts a mock server on the loopback interface.
+   *
+   * @param port The port to listen on, or 0 for an ephemeral port.
+   * @param seed The seed for the injected failures.
+   */
+  public MockBusinessCommunicationsServer(int port, long seed) throws IOException {
+    this.random = new Random(seed);
+    this.executor = Executors.newCachedThreadPool();
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(executor);
+    this.server.start();
+  }
+
+  /**
+   * Returns the root URL to pass in {@code bc.rootUrl} or to the client builder, ending with a
+   * slash.
+   */
+  public String getRootUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+        + "/";
+  }
+
+  /**
+   * Sets the delay added before every response.
+   */
+  public void setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
+  /**
+   * Sets the fraction of requests, between 0 and 1, that are answered with 503.
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Sets the fraction of requests, between 0 and 1, that are answered with 429.
+   */
+  public void setThrottleRate(double throttleRate) {
+    this.throttleRate = throttleRate;
+  }
+
+  /**
+   * Sets the number of requests accepted per second before answering 429, or 0 for no quota.
+   */
+  public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+  }
+
+  /**
+   * Returns the number of resources in the store.
+   */
+  public int size() {
+    return store.size();
+  }
+
+  /**
+   * Returns how many requests were served and how many failures were injected.
+   */
+  public String summary() {
+    return String.format("requests %d  injected 503 %d  429 %d  stored resources %d%n",
+        requests.sum(), injectedErrors.sum(), throttled.sum(), store.size());
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.increment();
+    try {
+      // The client library gzips request bodies
+      InputStream in = exchange.getRequestBody();
+      if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+        in = new GZIPInputStream(in);
+      }
+      byte[] requestBody = readBody(in);
+
+      if (latencyMillis > 0) {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+      }
+
+      if (overQuota() || draw(throttleRate)) {
+        throttled.increment();
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        sendError(exchange, 429, "RESOURCE_EXHAUSTED", "Quota exceeded");
+        return;
+      }
+
+      if (draw(errorRate)) {
+        injectedErrors.increment();
+        sendError(exchange, 503, "UNAVAILABLE", "The service is currently unavailable");
+        return;
+      }
+
+      String override = exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+      if (exchange.getRequestURI().getRawPath().equals("/batch")) {
+        sendBatch(exchange, requestBody);
+      } else {
+        Response response = route(exchange.getRequestMethod(), override,
+            exchange.getRequestURI(), requestBody);
+        sendJson(exchange, response.code, response.body);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, "INVALID_ARGUMENT", e.getMessage());
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
+      sendError(exchange, 500, "INTERNAL", String.valueOf(e));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Answers a single API request.
+   *
+   * @param method The HTTP method.
+   * @param override The X-HTTP-Method-Override header, or null.
+   * @param uri The request URI.
+   * @param requestBody The request body, already decompressed.
+   */
+  private Response route(String method, String override, URI uri, byte[] requestBody)
+      throws IOException {
+    String path = uri.getRawPath();
+    if (!path.startsWith("/v1/")) {
+      return error(404, "NOT_FOUND", "Unknown path " + path);
+    }
+
+    String name = decode(path.substring("/v1/".length()));
+    Map<String, String> query = parseQuery(uri.getRawQuery());
+
+    // HttpURLConnection cannot send PATCH, so the client library tunnels it through POST
+    if (override != null) {
+      method = override.toUpperCase();
+    }
+
+    if (name.equals("surveyQuestions") && method.equals("GET")) {
+      return new Response(200, listSurveyQuestions(query));
+    } else if (COLLECTION.matcher(name).matches()) {
+      if (method.equals("GET")) {
+        return new Response(200, list(name, query));
+      } else if (method.equals("POST")) {
+        return create(name, parse(requestBody));
+      } else {
+        return error(405, "UNIMPLEMENTED", method + " is not supported on " + name);
+      }
+    } else if (name.contains("/") && COLLECTION.matcher(parentOf(name)).matches()) {
+      Map<String, Object> resource = store.get(name);
+      if (resource == null) {
+        return error(404, "NOT_FOUND", "Resource " + name + " not found");
+      } else if (method.equals("GET")) {
+        return new Response(200, resource);
+      } else if (method.equals("PATCH")) {
+        Map<String, Object> updated = patch(name, parse(requestBody), query.get("updateMask"));
+        return updated == null
+            ? error(404, "NOT_FOUND", "Resource " + name + " not found")
+            : new Response(200, updated);
+      } else if (method.equals("DELETE")) {
+        synchronized (store) {
+          store.subMap(name + "/", name + "/\uffff").clear();
+          store.remove(name);
+        }
+        return new Response(200, new HashMap<>());
+      } else {
+        return error(405, "UNIMPLEMENTED", method + " is not supported on " + name);
+      }
+    } else {
+      return error(404, "NOT_FOUND", "The mock server does not implement " + name);
+    }
+  }
+
+  private Response create(String collection, Map<String, Object> resource) {
+    String parent = collection.contains("/") ? parentOf(collection) : null;
+    String name = collection + "/" + UUID.randomUUID().toString().replace("-", "");
+    resource.put("name", name);
+
+    // Checked under the lock so that a child is never stored after its parent was deleted
+    synchronized (store) {
+      if (parent != null && !store.containsKey(parent)) {
+        return error(404, "NOT_FOUND", "Parent " + parent + " not found");
+      }
+      store.put(name, resource);
+    }
+    return new Response(200, resource);
+  }
+
+  /**
+   * Answers a multipart/mixed batch request. Each part holds an HTTP request, which is routed
+   * like any other request; the responses are sent back as parts in the same order. Injected
+   * failures apply to the batch request as a whole.
+   */
+  private void sendBatch(HttpExchange exchange, byte[] requestBody) throws IOException {
+    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    int boundaryIndex = contentType == null ? -1 : contentType.indexOf("boundary=");
+    if (boundaryIndex < 0) {
+      sendError(exchange, 400, "INVALID_ARGUMENT", "Missing multipart boundary");
+      return;
+    }
+    String boundary = "--" + contentType.substring(boundaryIndex + "boundary=".length())
+        .replace("\"", "").trim();
+
+    String responseBoundary = "batch_" + UUID.randomUUID().toString().replace("-", "");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    String body = new String(requestBody, StandardCharsets.UTF_8);
+    for (String part : body.split(Pattern.quote(boundary))) {
+      // Skip the preamble and the closing "--"
+      int requestStart = part.indexOf("\r\n\r\n");
+      if (requestStart < 0) {
+        continue;
+      }
+      String[] request = part.substring(requestStart + 4).split("\r\n\r\n", 2);
+      String[] lines = request[0].split("\r\n");
+      String[] requestLine = lines[0].split(" ");
+
+      String override = null;
+      for (int i = 1; i < lines.length; i++) {
+        if (lines[i].toLowerCase().startsWith("x-http-method-override:")) {
+          override = lines[i].substring(lines[i].indexOf(':') + 1).trim();
+        }
+      }
+      String partBody = request.length > 1 ? request[1].replaceFirst("\r\n$", "") : "";
+
+      Response response;
+      try {
+        response = route(requestLine[0], override, URI.create(requestLine[1]),
+            partBody.getBytes(StandardCharsets.UTF_8));
+      } catch (IllegalArgumentException e) {
+        response = error(400, "INVALID_ARGUMENT", e.getMessage());
+      }
+
+      byte[] json = jsonFactory.toByteArray(response.body);
+      String headers = "--" + responseBoundary + "\r\n"
+          + "Content-Type: application/http\r\n\r\n"
+          + "HTTP/1.1 " + response.code + " " + (response.code == 200 ? "OK" : "Error") + "\r\n"
+          + "Content-Type: application/json; charset=UTF-8\r\n"
+          + "Content-Length: " + json.length + "\r\n\r\n";
+      out.write(headers.getBytes(StandardCharsets.UTF_8));
+      out.write(json);
+      out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+    out.write(("--" + responseBoundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+    byte[] bytes = out.toByteArray();
+    exchange.getResponseHeaders().set("Content-Type",
+        "multipart/mixed; boundary=" + responseBoundary);
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(bytes);
+    }
+  }
+
+  private Map<String, Object> list(String collection, Map<String, String> query) {
+    String prefix = collection + "/";
+    String pageToken = query.get("pageToken");
+    NavigableMap<String, Map<String, Object>> range = pageToken == null || pageToken.isEmpty()
+        ? store.subMap(prefix, true, prefix + "\uffff", false)
+        : store.subMap(pageToken, false, prefix + "\uffff", false);
+
+    int pageSize = pageSize(query);
+    List<Object> page = new ArrayList<>();
+    String lastName = null;
+    boolean more = false;
+    for (Map.Entry<String, Map<String, Object>> entry : range.entrySet()) {
+      if (entry.getKey().indexOf('/', prefix.length()) >= 0) {
+        // Skip grandchildren, such as the greetings of an agent when listing agents
+        continue;
+      }
+      if (page.size() == pageSize) {
+        more = true;
+        break;
+      }
+
+      page.add(entry.getValue());
+      lastName = entry.getKey();
+    }
+
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put(collection.substring(collection.lastIndexOf('/') + 1), page);
+    if (more) {
+      // The token is the last name returned, so pages stay stable while resources are added
+      response.put("nextPageToken", lastName);
+    }
+
+    return response;
+  }
+
+  private Map<String, Object> listSurveyQuestions(Map<String, String> query) {
+    int start = 0;
+    String pageToken = query.get("pageToken");
+    if (pageToken != null && !pageToken.isEmpty()) {
+      start = Integer.parseInt(pageToken);
+    }
+    int end = Math.min(TEMPLATE_QUESTION_IDS.size(), start + pageSize(query));
+
+    List<Object> page = new ArrayList<>();
+    for (String questionId : TEMPLATE_QUESTION_IDS.subList(start, end)) {
+      Map<String, Object> question = new LinkedHashMap<>();
+      question.put("name", "surveyQuestions/" + questionId);
+      question.put("questionType", "GOOGLE_STANDARD_QUESTION");
+      page.add(question);
+    }
+
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("surveyQuestions", page);
+    if (end < TEMPLATE_QUESTION_IDS.size()) {
+      response.put("nextPageToken", String.valueOf(end));
+    }
+
+    return response;
+  }
+
+  /**
+   * Copies the masked fields, or every top-level field when there is no mask, from the patch to
+   * the stored resource. A masked field that is missing from the patch is cleared.
+   *
+   * @return The updated resource, or null if it was deleted before the patch could apply.
+   */
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> patch(String name, Map<String, Object> changes, String updateMask) {
+    synchronized (store) {
+      Map<String, Object> stored = store.get(name);
+      if (stored == null) {
+        return null;
+      }
+
+      Map<String, Object> updated = new LinkedHashMap<>(stored);
+
+      List<String> paths = updateMask == null || updateMask.isEmpty()
+          ? new ArrayList<>(changes.keySet()) : Arrays.asList(updateMask.split(","));
+      for (String path : paths) {
+        String[] segments = path.trim().split("\\.");
+
+        Object value = changes;
+        for (int i = 0; i < segments.length && value instanceof Map; i++) {
+          value = ((Map<String, Object>) value).get(segments[i]);
+        }
+
+        // Copy the containers along the path so the stored resource is never shared
+        Map<String, Object> target = updated;
+        for (int i = 0; i < segments.length - 1; i++) {
+          Object child = target.get(segments[i]);
+          Map<String, Object> copy = child instanceof Map
+              ? new LinkedHashMap<>((Map<String, Object>) child) : new LinkedHashMap<>();
+          target.put(segments[i], copy);
+          target = copy;
+        }
+
+        String field = segments[segments.length - 1];
+        if (value == null) {
+          target.remove(field);
+        } else {
+          target.put(field, value);
+        }
+      }
+
+      updated.put("name", name);
+      store.put(name, updated);
+      return updated;
+    }
+  }
+
+  private boolean overQuota() {
+    int quota = maxRequestsPerSecond;
+    if (quota <= 0) {
+      return false;
+    }
+
+    long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    long current = quotaSecond.get();
+    if (current != second && quotaSecond.compareAndSet(current, second)) {
+      quotaUsed.set(0);
+    }
+
+    return quotaUsed.incrementAndGet() > quota;
+  }
+
+  private boolean draw(double rate) {
+    if (rate <= 0) {
+      return false;
+    }
+
+    synchronized (random) {
+      return random.nextDouble() < rate;
+    }
+  }
+
+  private static int pageSize(Map<String, String> query) {
+    String pageSize = query.get("pageSize");
+    int size = pageSize == null ? 0 : Integer.parseInt(pageSize);
+    return size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+  }
+
+  private static String parentOf(String name) {
+    return name.substring(0, name.lastIndexOf('/'));
+  }
+
+  private static Map<String, Object> parse(byte[] body) throws IOException {
+    if (body.length == 0) {
+      return new LinkedHashMap<>();
+    }
+
+    return new LinkedHashMap<>(jsonFactory.fromString(new String(body, "UTF-8"),
+        GenericJson.class));
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery)
+      throws UnsupportedEncodingException {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null) {
+      return query;
+    }
+
+    for (String pair : rawQuery.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0) {
+        query.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+      }
+    }
+
+    return query;
+  }
+
+  private static String decode(String value) throws UnsupportedEncodingException {
+    return URLDecoder.decode(value, "UTF-8");
+  }
+
+  private static byte[] readBody(InputStream in) throws IOException {
+    try (InputStream body = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = body.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+
+      return out.toByteArray();
+    }
+  }
+
+  private static Response error(int code, String status, String message) {
+    Map<String, Object> error = new LinkedHashMap<>();
+    error.put("code", code);
+    error.put("message", message);
+    error.put("status", status);
+
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("error", error);
+    return new Response(code, body);
+  }
+
+  private static void sendError(HttpExchange exchange, int code, String status, String message)
+      throws IOException {
+    sendJson(exchange, code, error(code, status, message).body);
+  }
+
+  private static void sendJson(HttpExchange exchange, int code, Object body) throws IOException {
+    byte[] bytes = jsonFactory.toByteArray(body);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
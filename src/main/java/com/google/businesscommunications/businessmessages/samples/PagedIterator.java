@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over every item of a paginated list call, following {@code nextPageToken} until the
+ * last page.
+ * <p>
+ * As soon as a page arrives, the request for the following page is started on a background
+ * thread, so the next page is usually ready by the time the caller reaches the end of the current
+ * one. At most two pages are held at once: the one being iterated and the one being fetched.
+ *
+ * @param <P> The list response type, e.g. ListBrandsResponse.
+ * @param <T> The item type, e.g. Brand.
+ */
+public class PagedIterator<P, T> implements Iterator<T>, AutoCloseable {
+
+  /**
+   * Fetches a single page of results.
+   */
+  public interface PageFetcher<P> {
+
+    /**
+     * @param pageToken The token returned by the previous page, or null for the first page.
+     */
+    P fetch(String pageToken) throws IOException;
+  }
+
+  private static final ExecutorService prefetchExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("page-prefetch-%d").build());
+
+  private final PageFetcher<P> fetcher;
+  private final Function<P, List<T>> itemsOf;
+  private final Function<P, String> nextPageTokenOf;
+
+  private Iterator<T> currentPage = Collections.emptyIterator();
+  private Future<P> nextPage;
+
+  /**
+   * Creates the iterator and immediately starts fetching the first page.
+   *
+   * @param fetcher Fetches the page for a given page token.
+   * @param itemsOf Extracts the items from a page. A null list is treated as empty.
+   * @param nextPageTokenOf Extracts the next page token. A null or empty token ends iteration.
+   */
+  public PagedIterator(PageFetcher<P> fetcher, Function<P, List<T>> itemsOf,
+      Function<P, String> nextPageTokenOf) {
+    this.fetcher = fetcher;
+    this.itemsOf = itemsOf;
+    this.nextPageTokenOf = nextPageTokenOf;
+    this.nextPage = prefetch(null);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!currentPage.hasNext()) {
+      if (nextPage == null) {
+        return false;
+      }
+
+      P page = awaitNextPage();
+
+      String pageToken = nextPageTokenOf.apply(page);
+      nextPage = pageToken == null || pageToken.isEmpty() ? null : prefetch(pageToken);
+
+      List<T> items = itemsOf.apply(page);
+      currentPage = items == null ? Collections.<T>emptyIterator() : items.iterator();
+    }
+
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    return currentPage.next();
+  }
+
+  /**
+   * Returns a sequential stream over the remaining items. Closing the stream cancels any page
+   * fetch that is still in flight.
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+        false).onClose(this::close);
+  }
+
+  /**
+   * Cancels the page fetch that is in flight, if any.
+   */
+  @Override
+  public void close() {
+    if (nextPage != null) {
+      nextPage.cancel(true);
+      nextPage = null;
+    }
+    currentPage = Collections.emptyIterator();
+  }
+
+  private Future<P> prefetch(String pageToken) {
+    return prefetchExecutor.submit(() -> fetcher.fetch(pageToken));
+  }
+
+  private P awaitNextPage() {
+    try {
+      return nextPage.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the next page", e);
+    } catch (ExecutionException e) {
+      nextPage = null;
+      if (e.getCause() instanceof IOException) {
+        throw new UncheckedIOException((IOException) e.getCause());
+      }
+      throw new IllegalStateException("Unable to fetch the next page", e.getCause());
+    }
+  }
+}
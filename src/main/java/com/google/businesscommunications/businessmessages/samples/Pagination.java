@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.ListAgentsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListBrandsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListGreetingsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListLocationsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListSurveyQuestionsResponse;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import com.google.api.services.businesscommunications.v1.model.SurveyQuestion;
+
+/**
+ * Paginating iterators for every list operation of the Business Communications API.
+ * <p>
+ * A page size of zero or less leaves the page size up to the server.
+ */
+public final class Pagination {
+
+  private Pagination() {
+  }
+
+  /**
+   * Iterates over all brands for the configured Cloud project.
+   */
+  public static PagedIterator<ListBrandsResponse, Brand> brands(BusinessCommunications client,
+      int pageSize) {
+    return new PagedIterator<>(
+        pageToken -> client.brands().list()
+            .setPageSize(pageSize(pageSize))
+            .setPageToken(pageToken)
+            .execute(),
+        ListBrandsResponse::getBrands,
+        ListBrandsResponse::getNextPageToken);
+  }
+
+  /**
+   * Iterates over all agents of the given brand.
+   *
+   * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
+   */
+  public static PagedIterator<ListAgentsResponse, Agent> agents(BusinessCommunications client,
+      String brandName, int pageSize) {
+    return new PagedIterator<>(
+        pageToken -> client.brands().agents().list(brandName)
+            .setPageSize(pageSize(pageSize))
+            .setPageToken(pageToken)
+            .execute(),
+        ListAgentsResponse::getAgents,
+        ListAgentsResponse::getNextPageToken);
+  }
+
+  /**
+   * Iterates over all locations of the given brand.
+   *
+   * @param brandName The unique identifier for the brand in "brands/BRAND_ID" format.
+   */
+  public static PagedIterator<ListLocationsResponse, Location> locations(
+      BusinessCommunications client, String brandName, int pageSize) {
+    return new PagedIterator<>(
+        pageToken -> client.brands().locations().list(brandName)
+            .setPageSize(pageSize(pageSize))
+            .setPageToken(pageToken)
+            .execute(),
+        ListLocationsResponse::getLocations,
+        ListLocationsResponse::getNextPageToken);
+  }
+
+  /**
+   * Iterates over all greetings of the given agent.
+   *
+   * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
+   * format.
+   */
+  public static PagedIterator<ListGreetingsResponse, Greeting> greetings(
+      BusinessCommunications client, String agentName, int pageSize) {
+    return new PagedIterator<>(
+        pageToken -> client.brands().agents().greetings().list(agentName)
+            .setPageSize(pageSize(pageSize))
+            .setPageToken(pageToken)
+            .execute(),
+        ListGreetingsResponse::getGreetings,
+        ListGreetingsResponse::getNextPageToken);
+  }
+
+  /**
+   * Iterates over all template survey questions.
+   */
+  public static PagedIterator<ListSurveyQuestionsResponse, SurveyQuestion> surveyQuestions(
+      BusinessCommunications client, int pageSize) {
+    // The surveyQuestions.list request does not declare paging parameters, so they are set as
+    // generic query parameters and ignored by the server if unsupported
+    return new PagedIterator<>(
+        pageToken -> {
+          BusinessCommunications.SurveyQuestions.List request = client.surveyQuestions().list();
+          if (pageSize > 0) {
+            request.set("pageSize", pageSize);
+          }
+          if (pageToken != null) {
+            request.set("pageToken", pageToken);
+          }
+          return request.execute();
+        },
+        ListSurveyQuestionsResponse::getSurveyQuestions,
+        response -> (String) response.get("nextPageToken"));
+  }
+
+  private static Integer pageSize(int pageSize) {
+    return pageSize > 0 ? pageSize : null;
+  }
+}
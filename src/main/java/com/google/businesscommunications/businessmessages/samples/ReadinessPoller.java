@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.util.BackOff;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Waits until a newly created resource can be read back from the API, polling its get method
+ * with jittered exponential back-off.
+ * <p>
+ * A resource is ready as soon as a get succeeds; a 404 means it is not visible yet. Polls go
+ * straight to the API rather than through {@link ResourceCaches}, which already holds the
+ * created resource. Any other error ends the wait.
+ * <p>
+ * Settings are read from system properties: {@code bc.readiness.timeoutMillis} (default 60000),
+ * {@code bc.readiness.baseDelayMillis} (50) and {@code bc.readiness.maxDelayMillis} (2000).
+ */
+public final class ReadinessPoller {
+
+  private static final Logger logger = Logger.getLogger(ReadinessPoller.class.getName());
+
+  private static final long TIMEOUT_MILLIS = Long.getLong("bc.readiness.timeoutMillis", 60_000);
+  private static final long BASE_DELAY_MILLIS = Long.getLong("bc.readiness.baseDelayMillis", 50);
+  private static final long MAX_DELAY_MILLIS = Long.getLong("bc.readiness.maxDelayMillis", 2_000);
+
+  private ReadinessPoller() {
+  }
+
+  /**
+   * Polls until the resource can be read, with the configured timeout.
+   *
+   * @param name The name of the created resource.
+   * @param getter Reads the resource from the API.
+   * @return The resource as read back.
+   */
+  public static <T> T awaitReadable(String name, ResourceCache.Loader<T> getter)
+      throws IOException, InterruptedException {
+    return awaitReadable(name, getter, TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Polls until the resource can be read.
+   *
+   * @param name The name of the created resource.
+   * @param getter Reads the resource from the API.
+   * @param timeoutMillis How long to keep polling before giving up.
+   * @return The resource as read back.
+   * @throws IOException If the resource is still not readable after the timeout, or a poll
+   * fails with an error other than 404.
+   */
+  public static <T> T awaitReadable(String name, ResourceCache.Loader<T> getter,
+      long timeoutMillis) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    BackOff backOff = new DecorrelatedJitterBackOff(BASE_DELAY_MILLIS, MAX_DELAY_MILLIS);
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        T resource = getter.load(name);
+        logger.fine(name + " readable after " + attempt + " polls in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        return resource;
+      } catch (GoogleJsonResponseException e) {
+        if (e.getStatusCode() != 404) {
+          throw e;
+        }
+      }
+
+      long delayMillis = Math.min(backOff.nextBackOffMillis(),
+          TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+      if (delayMillis <= 0) {
+        throw new IOException(name + " was not readable after " + timeoutMillis + " ms");
+      }
+      TimeUnit.MILLISECONDS.sleep(delayMillis);
+    }
+  }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import com.google.businesscommunications.businessmessages.samples.DesiredState.DesiredAgent;
+import com.google.businesscommunications.businessmessages.samples.DesiredState.DesiredBrand;
+import com.google.businesscommunications.businessmessages.samples.DesiredState.DesiredLocation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Brings an account in line with a {@link DesiredState} file.
+ * <p>
+ * The live state is listed with pagination, compared with the desired state, and turned into a
+ * plan of creates and minimal patches (see {@link UpdateMasks}). The plan is printed as a dry-run
+ * diff and, with the APPLY argument, executed by parallel workers in dependency order: brands,
+ * then agents, then locations and greetings. When the account already matches the file the plan
+ * is empty, so repeated runs only cost the list calls.
+ * <p>
+ * Live resources that are not in the file are left untouched.
+ */
+public class Reconciler {
+
+  private static final Logger logger = Logger.getLogger(Reconciler.class.getName());
+
+  private static final int DEFAULT_WORKERS = 8;
+
+  // Actions run stage by stage, since each stage needs the names created by the one before
+  private static final int BRAND_STAGE = 0;
+  private static final int AGENT_STAGE = 1;
+  private static final int LEAF_STAGE = 2;
+  private static final int STAGE_COUNT = 3;
+
+  /**
+   * A single API call that the plan will make.
+   */
+  private interface ActionTask {
+
+    void run() throws IOException;
+  }
+
+  private static final class Action {
+
+    private final int stage;
+    private final String description;
+    private final ActionTask task;
+
+    private Action(int stage, String description, ActionTask task) {
+      this.stage = stage;
+      this.description = description;
+      this.task = task;
+    }
+  }
+
+  private final BusinessCommunications client;
+
+  // Server-assigned names of brands keyed by display name, and of agents keyed by
+  // "<brand display name>/<agent display name>"; filled while planning and while applying
+  private final ConcurrentMap<String, String> brandNames = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, String> agentNames = new ConcurrentHashMap<>();
+
+  private final List<Action> actions = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger unchanged = new AtomicInteger();
+
+  public Reconciler(BusinessCommunications client) {
+    this.client = client;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      logger.severe("Usage: mvn exec:java -Dexec.args=\"<DESIRED_STATE_FILE> [APPLY] [WORKERS]\"");
+
+      System.exit(-1);
+    }
+
+    boolean apply = args.length > 1 && args[1].equals("APPLY");
+    int workers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORKERS;
+
+    DesiredState desiredState = DesiredState.load(args[0]);
+    Reconciler reconciler = new Reconciler(BusinessCommunicationsApi.getBusinessCommunications());
+
+    View.header("Plan for " + args[0]);
+    reconciler.plan(desiredState, workers);
+    reconciler.printPlan();
+
+    if (apply) {
+      View.header("Applying plan with " + workers + " workers");
+      int failures = reconciler.apply(workers);
+      System.out.println(failures == 0 ? "Done." : failures + " actions failed.");
+    } else {
+      System.out.println("Dry run only. Pass APPLY as the second argument to make the changes.");
+    }
+  }
+
+  /**
+   * Lists the live state and computes the actions needed to reach the desired state. Brands are
+   * listed in parallel.
+   */
+  public void plan(DesiredState desiredState, int workers) throws Exception {
+    Map<String, Brand> liveBrands = new HashMap<>();
+    try (PagedIterator<?, Brand> brands
+        = Pagination.brands(client, Constants.LIST_PAGE_SIZE)) {
+      brands.forEachRemaining(brand -> liveBrands.put(brand.getDisplayName(), brand));
+    }
+
+    ExecutorService executor = TaskExecutors.newExecutor(workers, "reconciler-%d");
+    try {
+      List<Future<?>> planned = new ArrayList<>();
+      for (DesiredBrand desiredBrand : nullToEmpty(desiredState.brands)) {
+        Brand liveBrand = liveBrands.get(desiredBrand.displayName);
+        planned.add(executor.submit(() -> {
+          planBrand(desiredBrand, liveBrand);
+          return null;
+        }));
+      }
+
+      for (Future<?> future : planned) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Prints the plan as a diff: "+" for creates and "~" for patches with their update masks.
+   */
+  public void printPlan() {
+    List<Action> sorted = new ArrayList<>(actions);
+    sorted.sort((a, b) -> a.stage != b.stage
+        ? Integer.compare(a.stage, b.stage) : a.description.compareTo(b.description));
+    for (Action action : sorted) {
+      System.out.println(action.description);
+    }
+
+    System.out.println();
+    System.out.println(actions.size() + " changes, " + unchanged.get() + " resources unchanged.");
+  }
+
+  /**
+   * Executes the plan stage by stage, running the actions of each stage in parallel.
+   *
+   * @return The number of actions that failed.
+   */
+  public int apply(int workers) throws InterruptedException {
+    AtomicInteger failures = new AtomicInteger();
+    ExecutorService executor = TaskExecutors.newExecutor(workers, "reconciler-%d");
+    try {
+      for (int stage = 0; stage < STAGE_COUNT; stage++) {
+        List<Future<?>> running = new ArrayList<>();
+        for (Action action : actions) {
+          if (action.stage != stage) {
+            continue;
+          }
+
+          running.add(executor.submit(() -> {
+            try {
+              action.task.run();
+              System.out.println("Done: " + action.description);
+            } catch (Exception e) {
+              failures.incrementAndGet();
+              logger.log(Level.SEVERE, "Failed: " + action.description, e);
+            }
+          }));
+        }
+
+        for (Future<?> future : running) {
+          try {
+            future.get();
+          } catch (ExecutionException e) {
+            failures.incrementAndGet();
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return failures.get();
+  }
+
+  private void planBrand(DesiredBrand desiredBrand, Brand liveBrand) throws IOException {
+    String brandKey = desiredBrand.displayName;
+
+    Map<String, Agent> liveAgents = new HashMap<>();
+    Map<String, Location> liveLocations = new HashMap<>();
+
+    if (liveBrand == null) {
+      add(BRAND_STAGE, "+ create brand \"" + brandKey + "\"", () -> {
+        Brand brand = client.brands().create(new Brand().setDisplayName(brandKey)).execute();
+        ResourceCaches.BRANDS.put(brand);
+        brandNames.put(brandKey, brand.getName());
+      });
+    } else {
+      unchanged.incrementAndGet();
+      brandNames.put(brandKey, liveBrand.getName());
+
+      try (PagedIterator<?, Agent> agents
+          = Pagination.agents(client, liveBrand.getName(), Constants.LIST_PAGE_SIZE)) {
+        agents.forEachRemaining(agent -> {
+          liveAgents.put(agent.getDisplayName(), agent);
+
+          // Locations in the file may refer to live agents that the file does not list
+          agentNames.put(brandKey + "/" + agent.getDisplayName(), agent.getName());
+        });
+      }
+      try (PagedIterator<?, Location> locations
+          = Pagination.locations(client, liveBrand.getName(), Constants.LIST_PAGE_SIZE)) {
+        locations.forEachRemaining(location -> liveLocations.put(location.getPlaceId(), location));
+      }
+    }
+
+    Set<String> desiredAgents = new HashSet<>();
+    for (DesiredAgent desiredAgent : nullToEmpty(desiredBrand.agents)) {
+      desiredAgents.add(desiredAgent.agent.getDisplayName());
+      planAgent(brandKey, desiredAgent, liveAgents.get(desiredAgent.agent.getDisplayName()));
+    }
+
+    for (DesiredLocation desiredLocation : nullToEmpty(desiredBrand.locations)) {
+      planLocation(brandKey, desiredLocation, desiredAgents,
+          liveLocations.get(desiredLocation.location.getPlaceId()));
+    }
+  }
+
+  private void planAgent(String brandKey, DesiredAgent desiredAgent, Agent liveAgent)
+      throws IOException {
+    String agentKey = brandKey + "/" + desiredAgent.agent.getDisplayName();
+    Map<String, Greeting> liveGreetings = new HashMap<>();
+
+    if (liveAgent == null) {
+      add(AGENT_STAGE, "+ create agent \"" + agentKey + "\"", () -> {
+        Agent agent = client.brands().agents()
+            .create(requireName(brandNames, brandKey), desiredAgent.agent)
+            .execute();
+        ResourceCaches.AGENTS.put(agent);
+        agentNames.put(agentKey, agent.getName());
+      });
+    } else {
+      agentNames.put(agentKey, liveAgent.getName());
+
+      UpdateMasks.Diff<Agent> diff = UpdateMasks.diffAgent(liveAgent, desiredAgent.agent);
+      if (diff.isEmpty()) {
+        unchanged.incrementAndGet();
+      } else {
+        add(AGENT_STAGE, "~ update " + liveAgent.getName() + " " + diff.getPaths(), () ->
+            ResourceCaches.AGENTS.put(client.brands().agents()
+                .patch(liveAgent.getName(), diff.getPayload())
+                .setUpdateMask(diff.getUpdateMask())
+                .execute()));
+      }
+
+      try (PagedIterator<?, Greeting> greetings
+          = Pagination.greetings(client, liveAgent.getName(), Constants.LIST_PAGE_SIZE)) {
+        greetings.forEachRemaining(greeting -> liveGreetings.put(greeting.getCustomId(), greeting));
+      }
+    }
+
+    for (Greeting desiredGreeting : nullToEmpty(desiredAgent.greetings)) {
+      planGreeting(agentKey, desiredGreeting, liveGreetings.get(desiredGreeting.getCustomId()));
+    }
+  }
+
+  /**
+   * Plans a location. Its agent must either exist in the brand or be listed in the file, so that
+   * a bad reference fails the plan rather than the apply.
+   *
+   * @param desiredAgents The display names of the brand's agents in the file.
+   */
+  private void planLocation(String brandKey, DesiredLocation desiredLocation,
+      Set<String> desiredAgents, Location liveLocation) throws IOException {
+    String agentKey = brandKey + "/" + desiredLocation.agentDisplayName;
+    String placeId = desiredLocation.location.getPlaceId();
+
+    // The agent name is only known here if the agent already exists
+    Location desired = desiredLocation.location.clone();
+    String knownAgentName = agentNames.get(agentKey);
+    if (knownAgentName != null) {
+      desired.setAgent(knownAgentName);
+    } else if (!desiredAgents.contains(desiredLocation.agentDisplayName)) {
+      throw new IOException("Location " + placeId + " refers to agent \"" + agentKey
+          + "\", which is neither in the desired state nor in the account");
+    }
+
+    if (liveLocation == null) {
+      add(LEAF_STAGE, "+ create location " + placeId + " for agent \"" + agentKey + "\"", () -> {
+        Location location = desired.clone().setAgent(requireName(agentNames, agentKey));
+        ResourceCaches.LOCATIONS.put(client.brands().locations()
+            .create(requireName(brandNames, brandKey), location)
+            .execute());
+      });
+      return;
+    }
+
+    UpdateMasks.Diff<Location> diff = UpdateMasks.diff(liveLocation, desired,
+        Collections.emptySet());
+    if (knownAgentName == null) {
+      // The agent is created by this plan, so the location moves to it as well. The diff is
+      // computed again at apply time, once the agent's name is known.
+      Set<String> paths = new LinkedHashSet<>(diff.getPaths());
+      paths.add("agent");
+      add(LEAF_STAGE, "~ update " + liveLocation.getName() + " " + paths, () -> {
+        Location resolved = desired.clone().setAgent(requireName(agentNames, agentKey));
+        UpdateMasks.Diff<Location> resolvedDiff = UpdateMasks.diff(liveLocation, resolved,
+            Collections.emptySet());
+        if (!resolvedDiff.isEmpty()) {
+          patchLocation(liveLocation.getName(), resolvedDiff);
+        }
+      });
+    } else if (diff.isEmpty()) {
+      unchanged.incrementAndGet();
+    } else {
+      add(LEAF_STAGE, "~ update " + liveLocation.getName() + " " + diff.getPaths(), () ->
+          patchLocation(liveLocation.getName(), diff));
+    }
+  }
+
+  private void patchLocation(String locationName, UpdateMasks.Diff<Location> diff)
+      throws IOException {
+    ResourceCaches.LOCATIONS.put(client.brands().locations()
+        .patch(locationName, diff.getPayload())
+        .setUpdateMask(diff.getUpdateMask())
+        .execute());
+  }
+
+  private void planGreeting(String agentKey, Greeting desiredGreeting, Greeting liveGreeting) {
+    if (liveGreeting == null) {
+      add(LEAF_STAGE, "+ create greeting \"" + desiredGreeting.getCustomId()
+          + "\" for agent \"" + agentKey + "\"", () ->
+          client.brands().agents().greetings()
+              .create(requireName(agentNames, agentKey), desiredGreeting)
+              .execute());
+      return;
+    }
+
+    UpdateMasks.Diff<Greeting> diff = UpdateMasks.diff(liveGreeting, desiredGreeting,
+        Collections.emptySet());
+    if (diff.isEmpty()) {
+      unchanged.incrementAndGet();
+    } else {
+      add(LEAF_STAGE, "~ update " + liveGreeting.getName() + " " + diff.getPaths(), () ->
+          client.brands().agents().greetings()
+              .patch(liveGreeting.getName(), diff.getPayload())
+              .setUpdateMask(diff.getUpdateMask())
+              .execute());
+    }
+  }
+
+  private void add(int stage, String description, ActionTask task) {
+    actions.add(new Action(stage, description, task));
+  }
+
+  private static String requireName(Map<String, String> names, String key) throws IOException {
+    String name = names.get(key);
+    if (name == null) {
+      throw new IOException("\"" + key + "\" does not exist and could not be created");
+    }
+
+    return name;
+  }
+
+  private static <T> List<T> nullToEmpty(List<T> list) {
+    return list == null ? Collections.<T>emptyList() : list;
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Empty;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Groups individual requests into multipart batch requests, so that many reads or deletes cost
+ * one HTTP round trip instead of one each.
+ * <p>
+ * Queued requests are sent when a batch fills up or when the oldest queued request has waited for
+ * the batch window, whichever comes first. Each queued request gets its own future, which
+ * completes with the item's response or fails with a {@link GoogleJsonResponseException} for that
+ * item alone. If the batch request itself fails, every item in it fails with that error.
+ * <p>
+ * Every item still passes through the client's request layers: it is authorized, counted
+ * against its method family's rate limit, and retried by the retry policy when its part of the
+ * response is retryable.
+ * <p>
+ * Settings: {@code bc.batch.maxSize} (default 100 requests per batch),
+ * {@code bc.batch.windowMillis} (50) and {@code bc.batch.concurrency} (4 batches in flight).
+ */
+public class RequestBatcher implements AutoCloseable {
+
+  private static final Logger logger = Logger.getLogger(RequestBatcher.class.getName());
+
+  private static final int MAX_BATCH_SIZE = Integer.getInteger("bc.batch.maxSize", 100);
+  private static final long WINDOW_MILLIS = Long.getLong("bc.batch.windowMillis", 50);
+  private static final int CONCURRENCY = Integer.getInteger("bc.batch.concurrency", 4);
+
+  /**
+   * A queued request and the future its response completes.
+   */
+  private static final class Item<T> {
+
+    private final AbstractGoogleJsonClientRequest<T> request;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private Item(AbstractGoogleJsonClientRequest<T> request) {
+      this.request = request;
+    }
+
+    private void queueTo(BatchRequest batch) throws IOException {
+      request.queue(batch, new JsonBatchCallback<T>() {
+        @Override
+        public void onSuccess(T response, HttpHeaders responseHeaders) {
+          future.complete(response);
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+          future.completeExceptionally(new GoogleJsonResponseException(
+              new HttpResponseException.Builder(error.getCode(), error.getMessage(),
+                  responseHeaders).setMessage(error.getCode() + " " + error.getMessage()),
+              error));
+        }
+      });
+    }
+  }
+
+  private final BusinessCommunications client;
+  private final int maxBatchSize;
+  private final long windowMillis;
+  private final ScheduledExecutorService sender;
+
+  private final Object lock = new Object();
+  private List<Item<?>> pending = new ArrayList<>();
+  private ScheduledFuture<?> windowFlush;
+
+  // Items handed to the sender whose batch has not finished yet
+  private final Set<Item<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder items = new LongAdder();
+
+  /**
+   * Creates a batcher with the batch size and window from the system properties.
+   */
+  public RequestBatcher(BusinessCommunications client) {
+    this(client, MAX_BATCH_SIZE, WINDOW_MILLIS);
+  }
+
+  /**
+   * @param client The client whose batch endpoint and request layers are used.
+   * @param maxBatchSize The number of queued requests that triggers a batch.
+   * @param windowMillis The longest time a queued request waits for its batch to fill up.
+   */
+  public RequestBatcher(BusinessCommunications client, int maxBatchSize, long windowMillis) {
+    this.client = client;
+    this.maxBatchSize = maxBatchSize;
+    this.windowMillis = windowMillis;
+    this.sender = Executors.newScheduledThreadPool(CONCURRENCY, new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("request-batcher-%d").build());
+  }
+
+  /**
+   * Queues a request for the agent. The agent is stored in the agent cache when it arrives.
+   *
+   * @param agentName The unique identifier for the agent in "brands/BRAND_ID/agents/AGENT_ID"
+   * format.
+   */
+  public CompletableFuture<Agent> getAgent(String agentName) throws IOException {
+    CompletableFuture<Agent> agent = queue(client.brands().agents().get(agentName));
+    agent.thenAccept(ResourceCaches.AGENTS::put);
+    return agent;
+  }
+
+  /**
+   * Queues a request for the location. The location is stored in the location cache when it
+   * arrives.
+   *
+   * @param locationName The unique identifier for the location in
+   * "brands/BRAND_ID/locations/LOCATION_ID" format.
+   */
+  public CompletableFuture<Location> getLocation(String locationName) throws IOException {
+    CompletableFuture<Location> location = queue(client.brands().locations().get(locationName));
+    location.thenAccept(ResourceCaches.LOCATIONS::put);
+    return location;
+  }
+
+  /**
+   * Queues the deletion of a location. Only a non-verified location can be deleted.
+   *
+   * @param locationName The unique identifier for the location in
+   * "brands/BRAND_ID/locations/LOCATION_ID" format.
+   */
+  public CompletableFuture<Empty> deleteLocation(String locationName) throws IOException {
+    CompletableFuture<Empty> deleted = queue(client.brands().locations().delete(locationName));
+    deleted.thenRun(() -> ResourceCaches.LOCATIONS.invalidate(locationName));
+    return deleted;
+  }
+
+  /**
+   * Queues a request for the greeting.
+   *
+   * @param greetingName The unique identifier for the greeting in
+   * "brands/BRAND_ID/agents/AGENT_ID/greetings/GREETING_ID" format.
+   */
+  public CompletableFuture<Greeting> getGreeting(String greetingName) throws IOException {
+    return queue(client.brands().agents().greetings().get(greetingName));
+  }
+
+  /**
+   * Queues any request built by the client.
+   *
+   * @return A future completed with the request's response.
+   */
+  public <T> CompletableFuture<T> queue(AbstractGoogleJsonClientRequest<T> request) {
+    Item<T> item = new Item<>(request);
+
+    synchronized (lock) {
+      pending.add(item);
+      if (pending.size() >= maxBatchSize) {
+        sendPending();
+      } else if (windowFlush == null) {
+        windowFlush = sender.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    return item.future;
+  }
+
+  /**
+   * Sends the queued requests now instead of waiting for the batch to fill up.
+   */
+  public void flush() {
+    synchronized (lock) {
+      if (!pending.isEmpty()) {
+        sendPending();
+      }
+    }
+  }
+
+  /**
+   * Returns how many batches were sent and how many requests they carried.
+   */
+  public String summary() {
+    long sent = batches.sum();
+    return String.format("batches %d  requests %d  average batch size %.1f%n",
+        sent, items.sum(), sent == 0 ? 0.0 : (double) items.sum() / sent);
+  }
+
+  /**
+   * Sends the queued requests and waits for every batch to finish. If the calling thread is
+   * interrupted while waiting, the requests that have not finished fail with an
+   * {@link InterruptedIOException} and the thread's interrupt flag is restored.
+   */
+  @Override
+  public void close() {
+    flush();
+    sender.shutdown();
+    try {
+      while (!sender.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.warning("Still waiting for " + inFlight.size() + " batched requests to finish");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      sender.shutdownNow();
+
+      InterruptedIOException error
+          = new InterruptedIOException("Interrupted while closing the request batcher");
+      for (Item<?> item : inFlight) {
+        item.future.completeExceptionally(error);
+      }
+    }
+  }
+
+  // Called with the lock held
+  private void sendPending() {
+    List<Item<?>> batchItems = pending;
+    pending = new ArrayList<>();
+    if (windowFlush != null) {
+      windowFlush.cancel(false);
+      windowFlush = null;
+    }
+
+    inFlight.addAll(batchItems);
+    sender.execute(() -> send(batchItems));
+  }
+
+  private void send(List<Item<?>> batchItems) {
+    batches.increment();
+    items.add(batchItems.size());
+
+    try {
+      // The client's initializer authorizes the outer request; each item keeps its own layers
+      BatchRequest batch = client.batch(client.getRequestFactory().getInitializer());
+      for (Item<?> item : batchItems) {
+        item.queueTo(batch);
+      }
+
+      batch.execute();
+
+      // Items missing from the response would otherwise never complete
+      for (Item<?> item : batchItems) {
+        item.future.completeExceptionally(new IOException("No response for batched request"));
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Batch of " + batchItems.size() + " requests failed", e);
+      for (Item<?> item : batchItems) {
+        item.future.completeExceptionally(e);
+      }
+    } catch (RuntimeException e) {
+      for (Item<?> item : batchItems) {
+        item.future.completeExceptionally(e);
+      }
+      throw e;
+    } finally {
+      for (Item<?> item : batchItems) {
+        inFlight.remove(item);
+      }
+    }
+  }
+}
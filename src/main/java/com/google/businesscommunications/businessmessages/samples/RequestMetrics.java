@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpIOExceptionHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseInterceptor;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * Records per-operation request metrics for every request sent through
+ * {@link BusinessCommunicationsClientFactory}.
+ * <p>
+ * Operations are named after the API method, e.g. {@code brands.agents.patch}. For each one the
+ * metrics hold the number of calls and attempts, the final status codes, I/O errors, bytes sent
+ * and received, and an HDR histogram of call latency. The latency of a call runs from the start of
+ * its first attempt, before the rate-limit wait, to its final response, so it includes rate-limit
+ * waits and retries. A call whose last attempt fails with an I/O error is counted as a failure,
+ * with the latency up to that error.
+ * <p>
+ * The metrics can be exported in the Prometheus text format or as a JSON summary. When the
+ * {@code bc.metrics.file} system property is set, they are written to that file when the JVM
+ * exits: as JSON if the file name ends with ".json", otherwise in the Prometheus format.
+ */
+public final class RequestMetrics implements HttpRequestInitializer {
+
+  private static final Logger logger = Logger.getLogger(RequestMetrics.class.getName());
+
+  // Latencies above this are recorded as this value
+  private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private static final RequestMetrics instance = new RequestMetrics();
+
+  /**
+   * The metrics of a single operation.
+   */
+  private static final class OperationMetrics {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder latencyMicros = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final ConcurrentHistogram latency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+
+    private void recordResponse(int statusCode, long contentLength, long micros) {
+      calls.increment();
+      statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+      if (contentLength > 0) {
+        bytesReceived.add(contentLength);
+      }
+      recordLatency(micros);
+    }
+
+    private void recordFailure(long micros) {
+      calls.increment();
+      failures.increment();
+      recordLatency(micros);
+    }
+
+    private void recordLatency(long micros) {
+      latencyMicros.add(micros);
+      latency.recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+    }
+  }
+
+  /**
+   * Reads one counter of an operation, for the Prometheus export.
+   */
+  private interface Counter {
+
+    long get(OperationMetrics metrics);
+  }
+
+  private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+  private RequestMetrics() {
+    String file = System.getProperty("bc.metrics.file");
+    if (file != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> writeTo(file)));
+    }
+  }
+
+  public static RequestMetrics getInstance() {
+    return instance;
+  }
+
+  /**
+   * Records the request's attempts, final response, and I/O errors. Runs after the retry policy
+   * so that it sees every attempt, and ahead of the throttler so that the first attempt's wait
+   * for a permit is part of the latency.
+   */
+  @Override
+  public void initialize(HttpRequest request) {
+    long[] startNanos = {0};
+
+    HttpExecuteInterceptor nextInterceptor = request.getInterceptor();
+    request.setInterceptor(httpRequest -> {
+      if (startNanos[0] == 0) {
+        startNanos[0] = System.nanoTime();
+      }
+      if (nextInterceptor != null) {
+        nextInterceptor.intercept(httpRequest);
+      }
+
+      OperationMetrics metrics = metricsFor(httpRequest);
+      metrics.attempts.increment();
+      HttpContent content = httpRequest.getContent();
+      if (content != null && content.getLength() > 0) {
+        metrics.bytesSent.add(content.getLength());
+      }
+    });
+
+    HttpResponseInterceptor nextResponseInterceptor = request.getResponseInterceptor();
+    request.setResponseInterceptor(response -> {
+      record(response, startNanos[0]);
+      if (nextResponseInterceptor != null) {
+        nextResponseInterceptor.interceptResponse(response);
+      }
+    });
+
+    HttpIOExceptionHandler nextIoHandler = request.getIOExceptionHandler();
+    request.setIOExceptionHandler((httpRequest, supportsRetry) -> {
+      OperationMetrics metrics = metricsFor(httpRequest);
+      metrics.ioErrors.increment();
+      boolean retry = nextIoHandler != null
+          && nextIoHandler.handleIOException(httpRequest, supportsRetry);
+      // HttpRequest rethrows the error when it is not handled or no retries are left
+      if (!retry || !supportsRetry) {
+        metrics.recordFailure(elapsedMicros(startNanos[0]));
+      }
+      return retry;
+    });
+  }
+
+  /**
+   * Returns the metrics in the Prometheus text exposition format.
+   */
+  public String toPrometheus() {
+    Map<String, OperationMetrics> sorted = new TreeMap<>(operations);
+    StringBuilder out = new StringBuilder();
+
+    out.append("# HELP bc_requests_total Completed API calls by final status code.\n");
+    out.append("# TYPE bc_requests_total counter\n");
+    for (Map.Entry<String, OperationMetrics> entry : sorted.entrySet()) {
+      for (Map.Entry<Integer, LongAdder> status
+          : new TreeMap<>(entry.getValue().statusCodes).entrySet()) {
+        out.append(String.format("bc_requests_total{operation=\"%s\",code=\"%d\"} %d%n",
+            entry.getKey(), status.getKey(), status.getValue().sum()));
+      }
+    }
+
+    appendCounter(out, sorted, "bc_request_attempts_total",
+        "HTTP attempts, including retries.", metrics -> metrics.attempts.sum());
+    appendCounter(out, sorted, "bc_request_io_errors_total",
+        "Attempts that failed without a response.", metrics -> metrics.ioErrors.sum());
+    appendCounter(out, sorted, "bc_request_failures_total",
+        "Calls whose last attempt failed without a response.", metrics -> metrics.failures.sum());
+    appendCounter(out, sorted, "bc_request_bytes_sent_total",
+        "Request body bytes sent.", metrics -> metrics.bytesSent.sum());
+    appendCounter(out, sorted, "bc_request_bytes_received_total",
+        "Response body bytes received.", metrics -> metrics.bytesReceived.sum());
+
+    out.append("# HELP bc_request_latency_seconds Latency of API calls, including retries.\n");
+    out.append("# TYPE bc_request_latency_seconds summary\n");
+    for (Map.Entry<String, OperationMetrics> entry : sorted.entrySet()) {
+      OperationMetrics metrics = entry.getValue();
+      for (double quantile : QUANTILES) {
+        out.append(String.format(
+            "bc_request_latency_seconds{operation=\"%s\",quantile=\"%s\"} %.6f%n",
+            entry.getKey(), quantile,
+            metrics.latency.getValueAtPercentile(quantile * 100) / 1e6));
+      }
+      out.append(String.format("bc_request_latency_seconds_sum{operation=\"%s\"} %.6f%n",
+          entry.getKey(), metrics.latencyMicros.sum() / 1e6));
+      out.append(String.format("bc_request_latency_seconds_count{operation=\"%s\"} %d%n",
+          entry.getKey(), metrics.calls.sum()));
+    }
+
+    return out.toString();
+  }
+
+  /**
+   * Returns the metrics as a JSON object keyed by operation, with latencies in milliseconds.
+   */
+  public String toJson() throws IOException {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    for (Map.Entry<String, OperationMetrics> entry : new TreeMap<>(operations).entrySet()) {
+      OperationMetrics metrics = entry.getValue();
+
+      Map<String, Object> statusCodes = new TreeMap<>();
+      metrics.statusCodes.forEach((code, count) -> statusCodes.put(code.toString(), count.sum()));
+
+      Map<String, Object> latency = new LinkedHashMap<>();
+      latency.put("mean", metrics.latency.getMean() / 1000);
+      for (double quantile : QUANTILES) {
+        latency.put("p" + String.valueOf(quantile * 100).replace(".0", ""),
+            metrics.latency.getValueAtPercentile(quantile * 100) / 1000.0);
+      }
+      latency.put("max", metrics.latency.getMaxValue() / 1000.0);
+
+      Map<String, Object> operation = new LinkedHashMap<>();
+      operation.put("calls", metrics.calls.sum());
+      operation.put("attempts", metrics.attempts.sum());
+      operation.put("ioErrors", metrics.ioErrors.sum());
+      operation.put("failures", metrics.failures.sum());
+      operation.put("statusCodes", statusCodes);
+      operation.put("bytesSent", metrics.bytesSent.sum());
+      operation.put("bytesReceived", metrics.bytesReceived.sum());
+      operation.put("latencyMillis", latency);
+      summary.put(entry.getKey(), operation);
+    }
+
+    return JacksonFactory.getDefaultInstance().toPrettyString(summary);
+  }
+
+  /**
+   * Returns a one-line-per-operation summary of calls, errors and latency percentiles.
+   */
+  public String summary() {
+    StringBuilder summary = new StringBuilder();
+    for (Map.Entry<String, OperationMetrics> entry : new TreeMap<>(operations).entrySet()) {
+      OperationMetrics metrics = entry.getValue();
+      long errors = metrics.statusCodes.entrySet().stream()
+          .filter(status -> status.getKey() >= 400)
+          .mapToLong(status -> status.getValue().sum())
+          .sum();
+      summary.append(String.format(
+          "%-32s calls %7d  errors %5d  p50 %8.1f ms  p99 %8.1f ms  max %8.1f ms%n",
+          entry.getKey(), metrics.calls.sum(), errors + metrics.failures.sum(),
+          metrics.latency.getValueAtPercentile(50) / 1000.0,
+          metrics.latency.getValueAtPercentile(99) / 1000.0,
+          metrics.latency.getMaxValue() / 1000.0));
+    }
+
+    return summary.toString();
+  }
+
+  /**
+   * Writes the metrics to a file, as JSON if the name ends with ".json" and in the Prometheus
+   * format otherwise.
+   */
+  public void writeTo(String file) {
+    try (Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+      writer.write(file.endsWith(".json") ? toJson() : toPrometheus());
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Unable to write metrics to " + file, e);
+    }
+  }
+
+  /**
+   * Returns the operation name of a request, e.g. "brands.agents.patch" for a PATCH of
+   * "v1/brands/BRAND_ID/agents/AGENT_ID".
+   */
+  static String operationName(HttpRequest request) {
+    GenericUrl url = request.getUrl();
+    List<String> segments = url.getPathParts();
+
+    StringBuilder name = new StringBuilder();
+    String verb = null;
+    int count = 0;
+    // Path parts start with an empty part for the leading slash; skip it and the version
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      if (segment.isEmpty() || (i <= 1 && segment.matches("v\\d+"))) {
+        continue;
+      }
+
+      int colon = segment.indexOf(':');
+      if (colon >= 0) {
+        verb = segment.substring(colon + 1);
+        segment = segment.substring(0, colon);
+      }
+
+      // Collections are at even positions, resource IDs at odd positions
+      if (count % 2 == 0) {
+        name.append(name.length() == 0 ? "" : ".").append(segment);
+      }
+      count++;
+    }
+
+    if (verb == null) {
+      verb = standardVerb(httpMethod(request), count % 2 == 1);
+    }
+
+    return (name.length() == 0 ? "unknown" : name) + "." + verb;
+  }
+
+  private static String standardVerb(String httpMethod, boolean collection) {
+    switch (httpMethod) {
+      case "GET":
+        return collection ? "list" : "get";
+      case "POST":
+        return collection ? "create" : "post";
+      case "PATCH":
+        return "patch";
+      case "DELETE":
+        return "delete";
+      default:
+        return httpMethod.toLowerCase();
+    }
+  }
+
+  private static String httpMethod(HttpRequest request) {
+    // Transports without PATCH support send POST with an override header
+    Object override = request.getHeaders().get("X-HTTP-Method-Override");
+    if (override instanceof List && !((List<?>) override).isEmpty()) {
+      override = ((List<?>) override).get(0);
+    }
+
+    return override != null ? override.toString() : request.getRequestMethod();
+  }
+
+  private OperationMetrics metricsFor(HttpRequest request) {
+    return operations.computeIfAbsent(operationName(request), name -> new OperationMetrics());
+  }
+
+  private void record(HttpResponse response, long startNanos) {
+    Long contentLength = response.getHeaders().getContentLength();
+    metricsFor(response.getRequest()).recordResponse(response.getStatusCode(),
+        contentLength == null ? 0 : contentLength, elapsedMicros(startNanos));
+  }
+
+  private static long elapsedMicros(long startNanos) {
+    return startNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+  }
+
+  private static void appendCounter(StringBuilder out, Map<String, OperationMetrics> operations,
+      String name, String help, Counter counter) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" counter\n");
+    for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+      out.append(String.format("%s{operation=\"%s\"} %d%n",
+          name, entry.getKey(), counter.get(entry.getValue())));
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side rate limiter applied to every request sent through
+ * {@link BusinessCommunicationsClientFactory}.
+ * <p>
+ * Each {@link MethodFamily} has its own token bucket. Tokens are handed out in the order threads
+ * ask for them and each reservation is spaced evenly after the previous one, so a burst from many
+ * worker threads is smoothed into a steady stream at the configured rate instead of hitting the
+ * API all at once and coming back as 429s.
+ * <p>
+ * Limits are read from the system properties {@code bc.rateLimit.<collection>}, in requests per
+ * second, for example {@code -Dbc.rateLimit.locations=20}. Families without a property, or with
+ * a limit of 0, are not throttled: quotas are set per Cloud project, so no single default fits
+ * every caller. A limit a little below the project's per-minute quota divided by 60 keeps bulk
+ * jobs just under the quota.
+ */
+public final class RequestThrottler implements HttpRequestInitializer {
+
+  private static final String PROPERTY_PREFIX = "bc.rateLimit.";
+
+  private static final RequestThrottler instance = new RequestThrottler();
+
+  // Families without an entry are not throttled
+  private final ConcurrentMap<MethodFamily, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+  private final Map<MethodFamily, LongAdder> acquired = new EnumMap<>(MethodFamily.class);
+  private final Map<MethodFamily, LongAdder> waitedMicros = new EnumMap<>(MethodFamily.class);
+
+  private RequestThrottler() {
+    for (MethodFamily family : MethodFamily.values()) {
+      acquired.put(family, new LongAdder());
+      waitedMicros.put(family, new LongAdder());
+
+      String configured = System.getProperty(PROPERTY_PREFIX + family.getCollection());
+      if (configured != null) {
+        setRequestsPerSecond(family, Double.parseDouble(configured));
+      }
+    }
+  }
+
+  public static RequestThrottler getInstance() {
+    return instance;
+  }
+
+  /**
+   * Changes the rate limit of a family at runtime.
+   *
+   * @param family The family to configure.
+   * @param requestsPerSecond The new limit, or 0 to disable throttling for the family.
+   */
+  public void setRequestsPerSecond(MethodFamily family, double requestsPerSecond) {
+    if (requestsPerSecond <= 0) {
+      limiters.remove(family);
+      return;
+    }
+
+    limiters.compute(family, (key, limiter) -> {
+      if (limiter == null) {
+        return RateLimiter.create(requestsPerSecond);
+      }
+
+      limiter.setRate(requestsPerSecond);
+      return limiter;
+    });
+  }
+
+  /**
+   * Blocks until the given number of requests may be sent for the family.
+   */
+  public void acquire(MethodFamily family, int permits) {
+    if (family == null) {
+      return;
+    }
+
+    RateLimiter limiter = limiters.get(family);
+    if (limiter != null) {
+      double waitedSeconds = limiter.acquire(permits);
+      waitedMicros.get(family).add((long) (waitedSeconds * 1_000_000));
+    }
+    acquired.get(family).add(permits);
+  }
+
+  /**
+   * Throttles the request before it is sent, on every attempt including retries.
+   */
+  @Override
+  public void initialize(HttpRequest request) {
+    HttpExecuteInterceptor next = request.getInterceptor();
+    request.setInterceptor(httpRequest -> {
+      acquire(MethodFamily.fromUrl(httpRequest.getUrl()), 1);
+      if (next != null) {
+        next.intercept(httpRequest);
+      }
+    });
+  }
+
+  /**
+   * Returns a one-line-per-family summary of requests sent and time spent waiting for tokens.
+   */
+  public String summary() {
+    StringBuilder summary = new StringBuilder();
+    for (MethodFamily family : MethodFamily.values()) {
+      RateLimiter limiter = limiters.get(family);
+      summary.append(String.format("%-16s limit %8s req/s  requests %8d  waited %10.1f ms%n",
+          family.getCollection(),
+          limiter == null ? "none" : String.format("%.1f", limiter.getRate()),
+          acquired.get(family).sum(),
+          waitedMicros.get(family).sum() / 1000.0));
+    }
+
+    return summary.toString();
+  }
+}
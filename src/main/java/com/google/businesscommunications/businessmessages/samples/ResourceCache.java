@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-through cache of API resources keyed by resource name, e.g. "brands/X/agents/Y".
+ * <p>
+ * Entries are evicted once the cache holds more than its maximum size or when they are older
+ * than the time-to-live. Writes made through the samples keep the cache current: creates and
+ * patches store the returned resource and deletes invalidate it, so a read right after a write
+ * does not go back to the network. Changes made by other clients become visible once the entry
+ * expires.
+ * <p>
+ * Resources are mutable, so the cache stores and hands out copies.
+ * <p>
+ * A cache created with {@code bypass} set always loads from the API on {@link #get} and stores
+ * what it loaded, for runs that need every read to be live. Those reads are not counted as hits
+ * or misses.
+ *
+ * @param <T> The resource type.
+ */
+public class ResourceCache<T extends GenericJson> {
+
+  /**
+   * Loads a resource from the API on a cache miss.
+   */
+  public interface Loader<T> {
+
+    T load(String name) throws IOException;
+  }
+
+  private final String label;
+  private final boolean bypass;
+  private final Cache<String, T> cache;
+
+  /**
+   * @param label The name used in the summary, e.g. "agents".
+   * @param maximumSize The maximum number of resources held.
+   * @param ttlSeconds How long a resource is served from the cache after it was stored.
+   * @param bypass Whether {@link #get} always loads from the API instead of serving cached copies.
+   */
+  public ResourceCache(String label, long maximumSize, long ttlSeconds, boolean bypass) {
+    this.label = label;
+    this.bypass = bypass;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns the cached resource, loading it with the given loader on a miss.
+   *
+   * @param name The resource name.
+   * @param loader Fetches the resource from the API.
+   * @return A copy of the resource.
+   */
+  @SuppressWarnings("unchecked")
+  public T get(String name, Loader<T> loader) throws IOException {
+    if (bypass) {
+      T resource = loader.load(name);
+      put(resource);
+      return resource;
+    }
+
+    try {
+      return (T) cache.get(name, () -> loader.load(name)).clone();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Stores a resource returned by a create or patch call under its name.
+   */
+  @SuppressWarnings("unchecked")
+  public void put(T resource) {
+    Object name = resource == null ? null : resource.get("name");
+    if (name != null) {
+      cache.put(name.toString(), (T) resource.clone());
+    }
+  }
+
+  /**
+   * Drops the resource with the given name.
+   */
+  public void invalidate(String name) {
+    cache.invalidate(name);
+  }
+
+  /**
+   * Drops every resource under the given parent, e.g. all agents of a deleted brand.
+   *
+   * @param parentName The parent resource name, e.g. "brands/X".
+   */
+  public void invalidateChildren(String parentName) {
+    String prefix = parentName + "/";
+    cache.asMap().keySet().removeIf(name -> name.startsWith(prefix));
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * Returns a one-line summary of hits, misses and evictions.
+   */
+  public String summary() {
+    CacheStats stats = cache.stats();
+    return String.format("%-10s size %6d  hits %8d  misses %8d  hit rate %5.1f%%  evictions %d%n",
+        label, cache.size(), stats.hitCount(), stats.missCount(), stats.hitRate() * 100,
+        stats.evictionCount());
+  }
+}
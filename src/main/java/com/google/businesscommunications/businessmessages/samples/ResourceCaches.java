@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Location;
+
+/**
+ * The shared resource caches used by the samples.
+ * <p>
+ * The size and time-to-live of each cache are read from the {@code bc.cache.maxSize} (default
+ * 10000) and {@code bc.cache.ttlSeconds} (default 300) system properties. Setting
+ * {@code bc.cache.bypass} to true makes every read go to the API, while writes still keep the
+ * caches current.
+ */
+public final class ResourceCaches {
+
+  private static final long MAX_SIZE = Long.getLong("bc.cache.maxSize", 10_000);
+  private static final long TTL_SECONDS = Long.getLong("bc.cache.ttlSeconds", 300);
+  private static final boolean BYPASS = Boolean.getBoolean("bc.cache.bypass");
+
+  public static final ResourceCache<Brand> BRANDS
+      = new ResourceCache<>("brands", MAX_SIZE, TTL_SECONDS, BYPASS);
+
+  public static final ResourceCache<Agent> AGENTS
+      = new ResourceCache<>("agents", MAX_SIZE, TTL_SECONDS, BYPASS);
+
+  public static final ResourceCache<Location> LOCATIONS
+      = new ResourceCache<>("locations", MAX_SIZE, TTL_SECONDS, BYPASS);
+
+  private ResourceCaches() {
+  }
+
+  /**
+   * Drops a deleted brand along with every agent and location that was deleted with it.
+   *
+   * @param brandName The brand name in "brands/BRAND_ID" format.
+   */
+  public static void invalidateBrand(String brandName) {
+    BRANDS.invalidate(brandName);
+    AGENTS.invalidateChildren(brandName);
+    LOCATIONS.invalidateChildren(brandName);
+  }
+
+  /**
+   * Returns the hit, miss and eviction statistics of every cache.
+   */
+  public static String summary() {
+    return BRANDS.summary() + AGENTS.summary() + LOCATIONS.summary();
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.Sleeper;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Retries requests that failed for transient reasons: 429 responses, 5xx responses and I/O
+ * errors such as timeouts.
+ * <p>
+ * Delays between attempts come from {@link DecorrelatedJitterBackOff}, and a 429 or 503
+ * response's Retry-After header is respected when it asks for a longer wait. Requests that may
+ * not be safe to repeat (creates) are only retried when the server clearly rejected them before
+ * doing any work, i.e. on 429 and 503.
+ * <p>
+ * All retries draw from a shared retry budget. Every new request adds a fraction of a token and
+ * every retry spends a whole one, so retries can never exceed a fixed share of the traffic. When
+ * the API is down, jobs fail fast instead of multiplying the load with retries.
+ * <p>
+ * Settings are read from system properties: {@code bc.retry.maxAttempts} (default 6),
+ * {@code bc.retry.baseDelayMillis} (250), {@code bc.retry.maxDelayMillis} (32000) and
+ * {@code bc.retry.budgetRatio} (0.2 retries per request).
+ */
+public final class RetryPolicy implements HttpRequestInitializer {
+
+  private static final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+
+  // Tokens available before any traffic has been seen, and the most the budget can save up
+  private static final double INITIAL_BUDGET = 10;
+  private static final double MAX_BUDGET = 100;
+
+  private static final RetryPolicy instance = new RetryPolicy(
+      Integer.getInteger("bc.retry.maxAttempts", 6),
+      Long.getLong("bc.retry.baseDelayMillis", 250),
+      Long.getLong("bc.retry.maxDelayMillis", 32_000),
+      Double.parseDouble(System.getProperty("bc.retry.budgetRatio", "0.2")));
+
+  private final int maxAttempts;
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+  private final double budgetRatio;
+
+  private double budget = INITIAL_BUDGET;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder throttledRetries = new LongAdder();
+  private final LongAdder serverErrorRetries = new LongAdder();
+  private final LongAdder ioErrorRetries = new LongAdder();
+  private final LongAdder budgetExhausted = new LongAdder();
+
+  private RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+      double budgetRatio) {
+    this.maxAttempts = maxAttempts;
+    this.baseDelayMillis = baseDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.budgetRatio = budgetRatio;
+  }
+
+  public static RetryPolicy getInstance() {
+    return instance;
+  }
+
+  /**
+   * Installs the retry handlers on a new request. Any unsuccessful-response handler already set,
+   * such as the credential's 401 token refresh, keeps running first.
+   */
+  @Override
+  public void initialize(HttpRequest request) {
+    requests.increment();
+    deposit();
+
+    BackOff backOff = new DecorrelatedJitterBackOff(baseDelayMillis, maxDelayMillis);
+    HttpUnsuccessfulResponseHandler next = request.getUnsuccessfulResponseHandler();
+
+    request.setNumberOfRetries(maxAttempts - 1);
+    request.setUnsuccessfulResponseHandler((httpRequest, response, supportsRetry) -> {
+      if (next != null && next.handleResponse(httpRequest, response, supportsRetry)) {
+        return true;
+      }
+
+      int statusCode = response.getStatusCode();
+      if (!supportsRetry || !isRetryable(httpRequest.getRequestMethod(), statusCode)) {
+        return false;
+      }
+
+      return backOff(backOff, retryAfterMillis(response),
+          statusCode == 429 ? throttledRetries : serverErrorRetries);
+    });
+    request.setIOExceptionHandler((httpRequest, supportsRetry) ->
+        supportsRetry && !"POST".equals(httpRequest.getRequestMethod())
+            && backOff(backOff, 0, ioErrorRetries));
+  }
+
+  /**
+   * Returns a summary of the requests and retries seen so far.
+   */
+  public String summary() {
+    return String.format("requests %d  retries: 429 %d, 5xx %d, I/O %d  budget exhausted %d%n",
+        requests.sum(), throttledRetries.sum(), serverErrorRetries.sum(), ioErrorRetries.sum(),
+        budgetExhausted.sum());
+  }
+
+  private static boolean isRetryable(String method, int statusCode) {
+    if (statusCode == 429 || statusCode == 503) {
+      return true;
+    }
+
+    // Other server errors may have happened after a create took effect
+    return statusCode >= 500 && statusCode != 501 && !"POST".equals(method);
+  }
+
+  private boolean backOff(BackOff backOff, long minimumDelayMillis, LongAdder reason)
+      throws IOException {
+    if (!withdraw()) {
+      budgetExhausted.increment();
+      logger.warning("Retry budget exhausted, not retrying");
+      return false;
+    }
+
+    long delayMillis = Math.max(backOff.nextBackOffMillis(), minimumDelayMillis);
+    try {
+      Sleeper.DEFAULT.sleep(delayMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+
+    reason.increment();
+    return true;
+  }
+
+  private long retryAfterMillis(HttpResponse response) {
+    Object retryAfter = response.getHeaders().get("retry-after");
+    if (retryAfter instanceof Iterable) {
+      Iterator<?> values = ((Iterable<?>) retryAfter).iterator();
+      retryAfter = values.hasNext() ? values.next() : null;
+    }
+
+    try {
+      return retryAfter == null ? 0
+          : Math.min(maxDelayMillis, Long.parseLong(retryAfter.toString().trim()) * 1000);
+    } catch (NumberFormatException e) {
+      // HTTP-date values are rare for this API; fall back to the jittered delay
+      return 0;
+    }
+  }
+
+  private synchronized void deposit() {
+    budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+  }
+
+  private synchronized boolean withdraw() {
+    if (budget < 1) {
+      return false;
+    }
+
+    budget -= 1;
+    return true;
+  }
+}
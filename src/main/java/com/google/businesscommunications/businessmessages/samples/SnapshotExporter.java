@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.ListAgentsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListBrandsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListGreetingsResponse;
+import com.google.api.services.businesscommunications.v1.model.ListLocationsResponse;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exports every brand, agent, location and greeting of the configured Cloud project to a JSONL
+ * snapshot, gzip-compressed when the file name ends in ".gz".
+ * <p>
+ * Brands are listed page by page, and each brand is then traversed on a worker: its agents and
+ * locations are listed, and the greetings of each agent are listed as a task of their own. Each
+ * task runs only while it holds one of a pool of permits, as many as there are workers, so the
+ * number of workers bounds the requests in flight on a thread pool and on virtual threads
+ * alike. Records are streamed to the file as they
+ * arrive, so memory use does not depend on the size of the account.
+ * <p>
+ * Each line holds one record with the fields type (brand, agent, location or greeting), parent
+ * (the name of the brand or agent it was listed under, absent for brands) and resource (the
+ * resource as returned by the API). Records are not in a fixed order. A list that fails is
+ * logged and counted, and the export continues with the rest of the account.
+ * <p>
+ * Given an index file, the export is incremental: the content hash of every resource is
+ * compared with the {@link SnapshotIndex} written by the previous run, and only resources that
+ * were added or changed are written, with a change field of "added" or "changed". Resources
+ * that are gone are written last as records with the fields type, change ("removed") and name.
+ * The index is then replaced with one for this run. If any list failed, removals are not
+ * reported and the index is kept, since missing resources may simply not have been listed.
+ */
+public class SnapshotExporter {
+
+  private static final Logger logger = Logger.getLogger(SnapshotExporter.class.getName());
+
+  private static final int DEFAULT_WORKERS = 8;
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private final BusinessCommunications client;
+  private final StreamingJsonWriter writer;
+
+  private final AtomicLong brands = new AtomicLong();
+  private final AtomicLong agents = new AtomicLong();
+  private final AtomicLong locations = new AtomicLong();
+  private final AtomicLong greetings = new AtomicLong();
+  private final AtomicLong failedLists = new AtomicLong();
+  private final AtomicLong unchanged = new AtomicLong();
+  private final AtomicLong removed = new AtomicLong();
+
+  // Set for an incremental export only
+  private SnapshotIndex previousIndex;
+  private SnapshotIndex.Builder nextIndex;
+
+  // Traversal tasks submitted and not yet finished, plus one held by export() while it lists
+  // brands. Tasks submit further tasks, so the export is done when this drops to zero.
+  private final AtomicLong pendingTasks = new AtomicLong();
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  private ExecutorService executor;
+  private Semaphore permits;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      logger.severe(
+          "Usage: mvn exec:java -Dexec.args=\"<OUTPUT_FILE> [WORKERS] [INDEX_FILE]\"");
+
+      System.exit(-1);
+    }
+
+    String outputFile = args[0];
+    int workers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WORKERS;
+    Path indexFile = args.length > 2 ? Paths.get(args[2]) : null;
+
+    View.header("Exporting a snapshot to " + outputFile + " with " + workers + " workers");
+
+    BusinessCommunications client = BusinessCommunicationsApi.getBusinessCommunications();
+
+    long start = System.nanoTime();
+    SnapshotExporter exporter;
+    try (StreamingJsonWriter writer = StreamingJsonWriter.toFile(outputFile,
+        StreamingJsonWriter.Format.JSONL, null)) {
+      exporter = new SnapshotExporter(client, writer);
+      if (indexFile == null) {
+        exporter.export(workers);
+      } else {
+        exporter.exportChanges(workers, indexFile);
+      }
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    System.out.printf("%s in %d ms%n", exporter.summary(), elapsedMillis);
+    System.out.print(BulkRunner.summaryOfRequests());
+  }
+
+  /**
+   * @param client The Business Communications client to use.
+   * @param writer The writer the snapshot records are written to. Writes to it are synchronized
+   * on the writer.
+   */
+  public SnapshotExporter(BusinessCommunications client, StreamingJsonWriter writer) {
+    this.client = client;
+    this.writer = writer;
+  }
+
+  /**
+   * Traverses the whole account and writes a record for every resource found. An exporter
+   * runs a single export.
+   *
+   * @param workers The maximum number of list requests in flight at once.
+   */
+  public void export(int workers) throws IOException, InterruptedException {
+    executor = TaskExecutors.newExecutor(workers, "snapshot-%d");
+    permits = new Semaphore(workers);
+    pendingTasks.set(1);
+
+    try (PagedIterator<ListBrandsResponse, Brand> brandPages
+        = Pagination.brands(client, Constants.LIST_PAGE_SIZE)) {
+      while (brandPages.hasNext()) {
+        Brand brand = brandPages.next();
+        brands.incrementAndGet();
+        write("brand", null, brand);
+
+        submit(() -> exportBrand(brand.getName()));
+      }
+    } finally {
+      taskDone();
+      finished.await();
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Traverses the whole account and writes records only for the resources that changed since
+   * the snapshot recorded in the index file, then replaces the index. Without an index file,
+   * every resource is reported as added.
+   *
+   * @param workers The maximum number of list requests in flight at once.
+   * @param indexFile The index of the previous snapshot, created if it does not exist.
+   */
+  public void exportChanges(int workers, Path indexFile)
+      throws IOException, InterruptedException {
+    try (SnapshotIndex index = SnapshotIndex.open(indexFile)) {
+      previousIndex = index;
+      nextIndex = new SnapshotIndex.Builder();
+
+      export(workers);
+
+      if (failedLists.get() > 0) {
+        logger.warning("Some lists failed, so removals are not reported and " + indexFile
+            + " is left unchanged");
+        return;
+      }
+
+      index.forEachUnseen(name -> {
+        GenericJson record = new GenericJson();
+        record.set("type", typeOf(name));
+        record.set("change", "removed");
+        record.set("name", name);
+        removed.incrementAndGet();
+        writeRecord(record);
+      });
+    }
+
+    nextIndex.writeTo(indexFile);
+  }
+
+  /**
+   * Returns a one-line count of the exported resources.
+   */
+  public String summary() {
+    return String.format(
+        "Exported %d brands, %d agents, %d locations, %d greetings (%d failed lists)",
+        brands.get(), agents.get(), locations.get(), greetings.get(), failedLists.get())
+        + (nextIndex == null ? "" : String.format(", %d unchanged and %d removed",
+            unchanged.get(), removed.get()));
+  }
+
+  private void exportBrand(String brandName) {
+    try (PagedIterator<ListAgentsResponse, Agent> agentPages
+        = Pagination.agents(client, brandName, Constants.LIST_PAGE_SIZE)) {
+      while (agentPages.hasNext()) {
+        Agent agent = agentPages.next();
+        agents.incrementAndGet();
+        write("agent", brandName, agent);
+
+        submit(() -> exportGreetings(agent.getName()));
+      }
+    } catch (Exception e) {
+      listFailed("agents of " + brandName, e);
+    }
+
+    try (PagedIterator<ListLocationsResponse, Location> locationPages
+        = Pagination.locations(client, brandName, Constants.LIST_PAGE_SIZE)) {
+      while (locationPages.hasNext()) {
+        locations.incrementAndGet();
+        write("location", brandName, locationPages.next());
+      }
+    } catch (Exception e) {
+      listFailed("locations of " + brandName, e);
+    }
+  }
+
+  private void exportGreetings(String agentName) {
+    try (PagedIterator<ListGreetingsResponse, Greeting> greetingPages
+        = Pagination.greetings(client, agentName, Constants.LIST_PAGE_SIZE)) {
+      while (greetingPages.hasNext()) {
+        greetings.incrementAndGet();
+        write("greeting", agentName, greetingPages.next());
+      }
+    } catch (Exception e) {
+      listFailed("greetings of " + agentName, e);
+    }
+  }
+
+  private void submit(Runnable task) {
+    pendingTasks.incrementAndGet();
+    // The permit is taken by the running task rather than here: tasks submit further tasks,
+    // and a task blocked in submit() while holding a permit could starve the pool
+    executor.execute(() -> {
+      try {
+        permits.acquire();
+        try {
+          task.run();
+        } finally {
+          permits.release();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        taskDone();
+      }
+    });
+  }
+
+  private void taskDone() {
+    if (pendingTasks.decrementAndGet() == 0) {
+      finished.countDown();
+    }
+  }
+
+  private void write(String type, String parent, GenericJson resource) {
+    GenericJson record = new GenericJson();
+    record.set("type", type);
+    if (parent != null) {
+      record.set("parent", parent);
+    }
+    record.set("resource", resource);
+
+    if (nextIndex != null) {
+      String name = (String) resource.get("name");
+      long contentHash;
+      try {
+        contentHash = SnapshotIndex.hashContent(jsonFactory.toByteArray(resource));
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not serialize " + name, e);
+      }
+      nextIndex.add(name, contentHash);
+
+      SnapshotIndex.Change change = previousIndex.check(name, contentHash);
+      if (change == SnapshotIndex.Change.UNCHANGED) {
+        unchanged.incrementAndGet();
+        return;
+      }
+      record.set("change", change.name().toLowerCase(Locale.ROOT));
+    }
+
+    writeRecord(record);
+  }
+
+  private void writeRecord(GenericJson record) {
+    try {
+      synchronized (writer) {
+        writer.write(record);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write the snapshot", e);
+    }
+  }
+
+  /**
+   * Returns the record type for a resource name, e.g. "agent" for
+   * "brands/BRAND_ID/agents/AGENT_ID".
+   */
+  private static String typeOf(String name) {
+    String[] segments = name.split("/");
+    String collection = segments.length >= 2 ? segments[segments.length - 2] : name;
+    return collection.endsWith("s") ? collection.substring(0, collection.length() - 1)
+        : collection;
+  }
+
+  private void listFailed(String what, Exception e) {
+    failedLists.incrementAndGet();
+    logger.log(Level.WARNING, "Could not list the " + what, e);
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A compact on-disk index of resource names and content hashes, used to find the resources that
+ * were added, changed or removed since a previous snapshot.
+ * <p>
+ * The file holds a header, a table of fixed-size entries sorted by the hash of the resource
+ * name, and the UTF-8 resource names the entries point to. The file is memory-mapped, so a
+ * lookup is a binary search over the table that touches only the pages it needs, and opening a
+ * large index does not read it into the heap. Names are compared in full when their hashes
+ * match.
+ * <p>
+ * Lookups may be made from several threads. A new index is built with a {@link Builder} and
+ * replaces the old file atomically.
+ */
+public final class SnapshotIndex implements Closeable {
+
+  private static final int MAGIC = 0x42434958;
+  private static final int VERSION = 1;
+
+  // magic, version, entry count
+  private static final int HEADER_SIZE = 12;
+
+  // name hash, content hash, name offset, name length
+  private static final int ENTRY_SIZE = 24;
+
+  private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+  /**
+   * How a resource compares with the indexed snapshot.
+   */
+  public enum Change {
+    ADDED,
+    CHANGED,
+    UNCHANGED
+  }
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final int count;
+  private final int namesOffset;
+
+  // Entries that were looked up; the rest are resources that have since been removed
+  private final BitSet seen;
+
+  private SnapshotIndex(FileChannel channel, ByteBuffer buffer) throws IOException {
+    this.channel = channel;
+    this.buffer = buffer;
+
+    if (buffer.capacity() == 0) {
+      this.count = 0;
+    } else {
+      if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+          || buffer.getInt(4) != VERSION) {
+        throw new IOException("Not a snapshot index, or written by another version");
+      }
+      this.count = buffer.getInt(8);
+    }
+
+    this.namesOffset = HEADER_SIZE + count * ENTRY_SIZE;
+    this.seen = new BitSet(count);
+  }
+
+  /**
+   * Opens an index file, or returns an empty index if the file does not exist.
+   *
+   * @param file The index written by a previous run.
+   */
+  public static SnapshotIndex open(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return new SnapshotIndex(null, ByteBuffer.allocate(0));
+    }
+
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      return new SnapshotIndex(channel, buffer);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of indexed resources.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Compares a resource with the indexed snapshot and marks it as still present.
+   *
+   * @param name The resource name, e.g. "brands/BRAND_ID/agents/AGENT_ID".
+   * @param contentHash The {@link #hashContent(byte[])} of the resource as it is now.
+   */
+  public Change check(String name, long contentHash) {
+    int entry = find(name);
+    if (entry < 0) {
+      return Change.ADDED;
+    }
+
+    synchronized (seen) {
+      seen.set(entry);
+    }
+
+    return buffer.getLong(entryOffset(entry) + 8) == contentHash
+        ? Change.UNCHANGED : Change.CHANGED;
+  }
+
+  /**
+   * Passes the name of every indexed resource that was not checked to the consumer. After a
+   * complete traversal these are the resources that were removed.
+   */
+  public void forEachUnseen(Consumer<String> consumer) {
+    BitSet unseen;
+    synchronized (seen) {
+      unseen = (BitSet) seen.clone();
+    }
+    unseen.flip(0, count);
+
+    for (int entry = unseen.nextSetBit(0); entry >= 0; entry = unseen.nextSetBit(entry + 1)) {
+      consumer.accept(nameAt(entry));
+    }
+  }
+
+  /**
+   * Returns the hash of a resource name.
+   */
+  public static long hashName(String name) {
+    return hashFunction.hashString(name, StandardCharsets.UTF_8).asLong();
+  }
+
+  /**
+   * Returns the hash of a resource's serialized content.
+   */
+  public static long hashContent(byte[] content) {
+    return hashFunction.hashBytes(content).asLong();
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The mapping itself is released when the buffer is garbage collected
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private int find(String name) {
+    long nameHash = hashName(name);
+
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleHash = buffer.getLong(entryOffset(middle));
+      if (middleHash < nameHash) {
+        low = middle + 1;
+      } else if (middleHash > nameHash) {
+        high = middle - 1;
+      } else {
+        // Scan the run of entries with this hash for the exact name
+        int first = middle;
+        while (first > 0 && buffer.getLong(entryOffset(first - 1)) == nameHash) {
+          first--;
+        }
+        for (int entry = first;
+            entry < count && buffer.getLong(entryOffset(entry)) == nameHash; entry++) {
+          if (nameAt(entry).equals(name)) {
+            return entry;
+          }
+        }
+        return -1;
+      }
+    }
+
+    return -1;
+  }
+
+  private String nameAt(int entry) {
+    int offset = buffer.getInt(entryOffset(entry) + 16);
+    byte[] bytes = new byte[buffer.getInt(entryOffset(entry) + 20)];
+    ByteBuffer view = buffer.duplicate();
+    view.position(namesOffset + offset);
+    view.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int entryOffset(int entry) {
+    return HEADER_SIZE + entry * ENTRY_SIZE;
+  }
+
+  /**
+   * Collects the names and content hashes of a new snapshot and writes them as an index file.
+   * Entries may be added from several threads.
+   */
+  public static final class Builder {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Adds a resource to the index.
+     *
+     * @param name The resource name.
+     * @param contentHash The {@link #hashContent(byte[])} of the resource.
+     */
+    public synchronized void add(String name, long contentHash) {
+      entries.add(new Entry(hashName(name), contentHash, name.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the number of resources added.
+     */
+    public synchronized int size() {
+      return entries.size();
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it over the given file.
+     */
+    public synchronized void writeTo(Path file) throws IOException {
+      entries.sort(Comparator.comparingLong(entry -> entry.nameHash));
+
+      long namesSize = 0;
+      for (Entry entry : entries) {
+        namesSize += entry.name.length;
+      }
+      long tableSize = (long) HEADER_SIZE + (long) entries.size() * ENTRY_SIZE;
+      if (tableSize + namesSize > Integer.MAX_VALUE) {
+        throw new IOException("The index would exceed 2 GB");
+      }
+
+      ByteBuffer table = ByteBuffer.allocate((int) tableSize);
+      table.putInt(MAGIC).putInt(VERSION).putInt(entries.size());
+      int nameOffset = 0;
+      for (Entry entry : entries) {
+        table.putLong(entry.nameHash).putLong(entry.contentHash)
+            .putInt(nameOffset).putInt(entry.name.length);
+        nameOffset += entry.name.length;
+      }
+      table.flip();
+
+      Path directory = file.toAbsolutePath().getParent();
+      Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        writeFully(out, table);
+
+        ByteBuffer names = ByteBuffer.allocate(64 * 1024);
+        for (Entry entry : entries) {
+          if (names.remaining() < entry.name.length) {
+            names.flip();
+            writeFully(out, names);
+            names.clear();
+          }
+          if (entry.name.length > names.capacity()) {
+            writeFully(out, ByteBuffer.wrap(entry.name));
+          } else {
+            names.put(entry.name);
+          }
+        }
+        names.flip();
+        writeFully(out, names);
+
+        out.force(true);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(temporary);
+        throw e;
+      }
+
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer bytes) throws IOException {
+      while (bytes.hasRemaining()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    final long nameHash;
+    final long contentHash;
+    final byte[] name;
+
+    Entry(long nameHash, long contentHash, byte[] name) {
+      this.nameHash = nameHash;
+      this.contentHash = contentHash;
+      this.name = name;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonGenerator;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.Data;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes API models straight to an output stream with the JSON streaming generator, instead of
+ * building a string per model with {@code toPrettyString()}. Memory use does not grow with the
+ * number of models written, so it suits exports of very large listings.
+ * <p>
+ * Three formats are available:
+ * <ul>
+ * <li>{@code pretty}: each model pretty-printed, one after another, as the samples print
+ * them.</li>
+ * <li>{@code jsonl}: one compact JSON object per line.</li>
+ * <li>{@code json}: a single compact JSON array.</li>
+ * </ul>
+ * <p>
+ * Output can be limited to a set of fields, e.g. {@code name,displayName,agent.displayName}.
+ * Dotted paths select nested fields, and a path through a list applies to every element.
+ * <p>
+ * The writer for standard output reads the format from the {@code bc.output} system property
+ * (default {@code pretty}) and the fields from {@code bc.output.fields} (default all fields).
+ */
+public class StreamingJsonWriter implements Closeable, Flushable {
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The available output formats.
+   */
+  public enum Format {
+    PRETTY("pretty"),
+    JSONL("jsonl"),
+    JSON_ARRAY("json");
+
+    private final String propertyValue;
+
+    Format(String propertyValue) {
+      this.propertyValue = propertyValue;
+    }
+
+    /**
+     * Returns the format named by the {@code bc.output} system property.
+     */
+    public static Format fromSystemProperty() {
+      String configured = System.getProperty("bc.output", PRETTY.propertyValue);
+      for (Format format : values()) {
+        if (format.propertyValue.equalsIgnoreCase(configured)) {
+          return format;
+        }
+      }
+
+      throw new IllegalArgumentException("Unknown bc.output value: " + configured);
+    }
+  }
+
+  private final BufferedOutputStream out;
+  private final boolean closeStream;
+  private final Format format;
+
+  // Projected fields as a tree of field name to nested fields; null selects everything
+  private final Map<String, Object> projection;
+
+  // Generators write to this view of the buffer, which ignores flush and close so that each
+  // record does not reach the underlying stream on its own
+  private final OutputStream generatorTarget;
+
+  // The generator of the JSON array, which spans every record
+  private JsonGenerator arrayGenerator;
+
+  private long count;
+
+  /**
+   * @param out The stream to write to.
+   * @param format The output format.
+   * @param fields The field paths to write, or null to write every field.
+   * @param closeStream Whether closing the writer closes the stream.
+   */
+  public StreamingJsonWriter(OutputStream out, Format format, Collection<String> fields,
+      boolean closeStream) {
+    this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+    this.closeStream = closeStream;
+    this.format = format;
+    this.projection = fields == null || fields.isEmpty() ? null : parseProjection(fields);
+    this.generatorTarget = new FilterOutputStream(this.out) {
+      @Override
+      public void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  /**
+   * Returns a writer to standard output in the format and with the fields set in the
+   * {@code bc.output} and {@code bc.output.fields} system properties. Closing it flushes but
+   * does not close standard output.
+   */
+  public static StreamingJsonWriter toStandardOutput() {
+    String fields = System.getProperty("bc.output.fields");
+    return new StreamingJsonWriter(System.out, Format.fromSystemProperty(),
+        fields == null ? null : Arrays.asList(fields.split(",")), false);
+  }
+
+  /**
+   * Returns a writer to a new file. A file name ending in {@code .gz} is gzip-compressed.
+   *
+   * @param file The file to create or replace.
+   * @param format The output format.
+   * @param fields The field paths to write, or null to write every field.
+   */
+  public static StreamingJsonWriter toFile(String file, Format format, Collection<String> fields)
+      throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    if (file.endsWith(".gz")) {
+      out = new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    return new StreamingJsonWriter(out, format, fields, true);
+  }
+
+  /**
+   * Writes one model, or any map or value the JSON generator accepts.
+   */
+  public void write(Object model) throws IOException {
+    if (format == Format.JSON_ARRAY) {
+      if (arrayGenerator == null) {
+        arrayGenerator = jsonFactory.createJsonGenerator(generatorTarget, StandardCharsets.UTF_8);
+        arrayGenerator.writeStartArray();
+      }
+      writeProjected(arrayGenerator, model, projection);
+    } else {
+      JsonGenerator generator
+          = jsonFactory.createJsonGenerator(generatorTarget, StandardCharsets.UTF_8);
+      if (format == Format.PRETTY) {
+        generator.enablePrettyPrint();
+      }
+      writeProjected(generator, model, projection);
+      generator.flush();
+      out.write('\n');
+    }
+
+    count++;
+  }
+
+  /**
+   * Returns the number of models written.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (arrayGenerator != null) {
+      arrayGenerator.flush();
+    }
+    out.flush();
+  }
+
+  /**
+   * Ends the JSON array, if any, and flushes the output.
+   */
+  @Override
+  public void close() throws IOException {
+    if (format == Format.JSON_ARRAY) {
+      if (arrayGenerator == null) {
+        arrayGenerator = jsonFactory.createJsonGenerator(generatorTarget, StandardCharsets.UTF_8);
+        arrayGenerator.writeStartArray();
+      }
+      arrayGenerator.writeEndArray();
+      arrayGenerator.flush();
+      out.write('\n');
+    }
+
+    if (closeStream) {
+      out.close();
+    } else {
+      out.flush();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void writeProjected(JsonGenerator generator, Object value,
+      Map<String, Object> projection) throws IOException {
+    if (projection == null) {
+      generator.serialize(value);
+    } else if (value instanceof Map) {
+      Map<String, Object> fields = (Map<String, Object>) value;
+      generator.writeStartObject();
+      for (Map.Entry<String, Object> field : projection.entrySet()) {
+        Object fieldValue = fields.get(field.getKey());
+        if (fieldValue != null && !Data.isNull(fieldValue)) {
+          generator.writeFieldName(field.getKey());
+          writeProjected(generator, fieldValue, (Map<String, Object>) field.getValue());
+        }
+      }
+      generator.writeEndObject();
+    } else if (value instanceof List) {
+      generator.writeStartArray();
+      for (Object element : (List<?>) value) {
+        writeProjected(generator, element, projection);
+      }
+      generator.writeEndArray();
+    } else {
+      generator.serialize(value);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> parseProjection(Collection<String> fields) {
+    Map<String, Object> root = new LinkedHashMap<>();
+    for (String field : fields) {
+      Map<String, Object> node = root;
+      String[] segments = field.trim().split("\\.");
+      for (int i = 0; i < segments.length; i++) {
+        boolean leaf = i == segments.length - 1;
+        if (node.containsKey(segments[i]) && node.get(segments[i]) == null) {
+          // A shorter path already selects the whole field
+          break;
+        }
+        if (leaf) {
+          node.put(segments[i], null);
+        } else {
+          node = (Map<String, Object>) node.computeIfAbsent(segments[i],
+              key -> new LinkedHashMap<String, Object>());
+        }
+      }
+    }
+
+    return root;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Creates the executors that run API requests concurrently.
+ * <p>
+ * Two modes are available, selected with the {@code bc.executor} system property:
+ * <ul>
+ * <li>{@code platform} (default): a fixed pool of platform threads, so at most that many
+ * requests are in flight.</li>
+ * <li>{@code virtual}: a new virtual thread for every task. Blocking on a response parks the
+ * virtual thread instead of holding an OS thread, so tens of thousands of requests can wait at
+ * once. Callers still bound the number of requests in flight themselves.</li>
+ * </ul>
+ * <p>
+ * Virtual threads need Java 21 or later. The project is compiled for Java 8, so the virtual
+ * executor is looked up reflectively; on older runtimes the virtual mode logs a warning and falls
+ * back to platform threads.
+ */
+public final class TaskExecutors {
+
+  private static final Logger logger = Logger.getLogger(TaskExecutors.class.getName());
+
+  /**
+   * The available execution modes.
+   */
+  public enum Mode {
+    PLATFORM("platform"),
+    VIRTUAL("virtual");
+
+    private final String propertyValue;
+
+    Mode(String propertyValue) {
+      this.propertyValue = propertyValue;
+    }
+
+    /**
+     * Returns the mode named by the {@code bc.executor} system property.
+     */
+    public static Mode fromSystemProperty() {
+      String configured = System.getProperty("bc.executor", PLATFORM.propertyValue);
+      for (Mode mode : values()) {
+        if (mode.propertyValue.equalsIgnoreCase(configured)) {
+          return mode;
+        }
+      }
+
+      throw new IllegalArgumentException("Unknown bc.executor value: " + configured);
+    }
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21
+  private static final Method VIRTUAL_EXECUTOR_FACTORY = findVirtualExecutorFactory();
+
+  private TaskExecutors() {
+  }
+
+  /**
+   * Returns whether this runtime supports virtual threads.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return VIRTUAL_EXECUTOR_FACTORY != null;
+  }
+
+  /**
+   * Creates an executor in the mode named by the {@code bc.executor} system property.
+   *
+   * @param platformThreads The pool size used in platform mode.
+   * @param nameFormat The platform thread name format, e.g. "provisioner-%d".
+   */
+  public static ExecutorService newExecutor(int platformThreads, String nameFormat) {
+    return newExecutor(Mode.fromSystemProperty(), platformThreads, nameFormat);
+  }
+
+  /**
+   * Creates an executor in the given mode.
+   *
+   * @param mode Whether to run tasks on virtual threads or a fixed pool.
+   * @param platformThreads The pool size used in platform mode.
+   * @param nameFormat The platform thread name format, e.g. "provisioner-%d".
+   */
+  public static ExecutorService newExecutor(Mode mode, int platformThreads, String nameFormat) {
+    if (mode == Mode.VIRTUAL) {
+      if (isVirtualThreadSupported()) {
+        return newVirtualThreadPerTaskExecutor();
+      }
+
+      logger.warning("Virtual threads need Java 21 or later, running on "
+          + System.getProperty("java.version") + "; using " + platformThreads
+          + " platform threads instead");
+    }
+
+    return Executors.newFixedThreadPool(platformThreads, new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat(nameFormat).build());
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) VIRTUAL_EXECUTOR_FACTORY.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Could not create a virtual thread executor", e);
+    }
+  }
+
+  private static Method findVirtualExecutorFactory() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+      // Before Java 21 the method exists only behind --enable-preview and fails when called
+      ((ExecutorService) factory.invoke(null)).shutdown();
+      return factory;
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return null;
+    }
+  }
+}
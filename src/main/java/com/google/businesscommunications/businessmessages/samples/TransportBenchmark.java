@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Compares the transport backends from {@link HttpTransports} by sending concurrent requests to
+ * a local HTTPS {@link LocalStubServer}.
+ * <p>
+ * The server certificate is read from a key store, which can be created with:
+ * <pre>
+ * keytool -genkeypair -alias stub -keyalg RSA -dname CN=localhost -ext SAN=dns:localhost \
+ *     -storetype PKCS12 -keystore stub.p12 -storepass changeit
+ * </pre>
+ * Usage: mvn exec:java -Dexec.mainClass="...TransportBenchmark"
+ * -Dexec.args="&lt;KEYSTORE&gt; &lt;PASSWORD&gt; [REQUESTS] [THREADS]"
+ */
+public class TransportBenchmark {
+
+  private static final byte[] AGENT_BODY = ("{\"name\":\"brands/stub/agents/stub\","
+      + "\"displayName\":\"Stub Agent\"}").getBytes(StandardCharsets.UTF_8);
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println(
+          "Usage: mvn exec:java -Dexec.args=\"<KEYSTORE> <PASSWORD> [REQUESTS] [THREADS]\"");
+
+      System.exit(-1);
+    }
+
+    char[] password = args[1].toCharArray();
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+
+    KeyStore keyStore = KeyStore.getInstance(args[0].endsWith(".jks") ? "JKS" : "PKCS12");
+    try (InputStream in = new FileInputStream(args[0])) {
+      keyStore.load(in, password);
+    }
+
+    // Serve with the private key, and trust only the matching certificate on the client side
+    KeyManagerFactory keyManagers = KeyManagerFactory
+        .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, password);
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(keyManagers.getKeyManagers(), null, null);
+
+    KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    trustStore.load(null, null);
+    for (String alias : Collections.list(keyStore.aliases())) {
+      trustStore.setCertificateEntry(alias, keyStore.getCertificate(alias));
+    }
+
+    // Measure the transport only, not the client-side rate limit
+    for (MethodFamily family : MethodFamily.values()) {
+      RequestThrottler.getInstance().setRequestsPerSecond(family, 0);
+    }
+
+    try (LocalStubServer server = new LocalStubServer(0, AGENT_BODY, sslContext)) {
+      View.header("Transport benchmark (" + requests + " requests, " + threads + " threads)");
+
+      for (HttpTransports.Backend backend : HttpTransports.Backend.values()) {
+        HttpTransport transport = HttpTransports.create(backend, trustStore);
+        BusinessCommunications client = BusinessCommunicationsClientFactory
+            .newClient(transport, null, "transport-benchmark", server.getRootUrl());
+
+        // Warm up connections and JIT before measuring
+        run(client, requests / 10 + threads, threads);
+        long nanos = run(client, requests, threads);
+
+        System.out.printf("%-10s total %8.1f ms   %8.1f requests/s%n",
+            backend, nanos / 1e6, requests * 1e9 / nanos);
+
+        transport.shutdown();
+      }
+    }
+  }
+
+  private static long run(BusinessCommunications client, int requests, int threads)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      long start = System.nanoTime();
+      List<Future<Agent>> results = IntStream.range(0, requests)
+          .mapToObj(i -> executor.submit(
+              () -> client.brands().agents().get("brands/stub/agents/stub").execute()))
+          .collect(Collectors.toList());
+      for (Future<Agent> result : results) {
+        result.get();
+      }
+
+      return System.nanoTime() - start;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
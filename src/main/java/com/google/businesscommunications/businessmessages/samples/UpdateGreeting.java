@@ -30,11 +30,11 @@ import java.util.*;
 
 public class UpdateGreeting {
 
-  private static BusinessCommunications.Builder builder;
+  private static BusinessCommunications client;
 
   public static void main(String[] args) {
 
-    builder = BusinessCommunicationsApi.getBusinessCommunicationsBuilder();
+    client = BusinessCommunicationsApi.getBusinessCommunications();
 
     String brandId = "EDIT_HERE";
     String agentId = "EDIT_HERE";
@@ -57,8 +57,8 @@ public class UpdateGreeting {
 
     // Build the request to get the greeting object and execute it
     try {
-      BusinessCommunications.Brands.Agents.Greetings.Patch request = builder
-          .build().brands().agents().greetings().patch(greetingName, greeting);
+      BusinessCommunications.Brands.Agents.Greetings.Patch request = client
+          .brands().agents().greetings().patch(greetingName, greeting);
 
       request.setUpdateMask("welcomeMessages,customId");
 
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.GenericData;
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import com.google.api.services.businesscommunications.v1.model.Agent;
+import com.google.api.services.businesscommunications.v1.model.Brand;
+import com.google.api.services.businesscommunications.v1.model.Greeting;
+import com.google.api.services.businesscommunications.v1.model.Location;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes the minimal update mask between the current and the desired state of a resource and
+ * sends only what changed.
+ * <p>
+ * The desired resource only needs the fields the caller cares about: a field that is null in the
+ * desired resource is left as it is. Nested objects are compared field by field, while lists,
+ * entries of maps such as {@code conversationalSettings.en}, and a few objects the API only
+ * accepts as a whole are compared and sent as a unit. When nothing changed, no request is sent.
+ */
+public final class UpdateMasks {
+
+  private static final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+  // Fields set by the server that must never be part of an update
+  private static final Set<String> OUTPUT_ONLY_FIELDS = new HashSet<>(Arrays.asList(
+      "name", "agentTestUrl", "locationTestUrl", "testUrls"));
+
+  // Agent sub-objects that are replaced as a whole, as in the AgentSample update masks
+  private static final Set<String> AGENT_ATOMIC_PATHS = new HashSet<>(Arrays.asList(
+      "businessMessagesAgent.phone",
+      "businessMessagesAgent.nonLocalConfig",
+      "businessMessagesAgent.primaryAgentInteraction",
+      "businessMessagesAgent.surveyConfig"));
+
+  private static final LongAdder patchesSent = new LongAdder();
+  private static final LongAdder patchesSkipped = new LongAdder();
+
+  /**
+   * The difference between two versions of a resource.
+   *
+   * @param <T> The resource type.
+   */
+  public static final class Diff<T extends GenericJson> {
+
+    private final Set<String> paths;
+    private final T payload;
+
+    private Diff(Set<String> paths, T payload) {
+      this.paths = paths;
+      this.payload = payload;
+    }
+
+    /**
+     * Returns true if the desired resource matches the current one.
+     */
+    public boolean isEmpty() {
+      return paths.isEmpty();
+    }
+
+    /**
+     * Returns the changed field paths, e.g. ["displayName", "businessMessagesAgent.logoUrl"].
+     */
+    public Set<String> getPaths() {
+      return Collections.unmodifiableSet(paths);
+    }
+
+    /**
+     * Returns the comma-separated update mask.
+     */
+    public String getUpdateMask() {
+      return String.join(",", paths);
+    }
+
+    /**
+     * Returns a copy of the desired resource holding only the changed fields.
+     */
+    public T getPayload() {
+      return payload;
+    }
+  }
+
+  private UpdateMasks() {
+  }
+
+  /**
+   * Compares two versions of a resource.
+   *
+   * @param current The resource as it is now.
+   * @param desired The resource as it should be. Null fields are ignored.
+   * @param atomicPaths Paths of nested objects that are compared and sent as a whole.
+   * @return The difference, with a trimmed payload.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends GenericJson> Diff<T> diff(T current, T desired,
+      Set<String> atomicPaths) {
+    Set<String> paths = new LinkedHashSet<>();
+    collectChanges("", current, desired, atomicPaths, true, paths);
+
+    T payload = copyOf(desired);
+    prune("", payload, paths);
+
+    return new Diff<>(paths, payload);
+  }
+
+  /**
+   * Compares two versions of an agent, treating the sub-objects the API replaces as a whole as
+   * units.
+   */
+  public static Diff<Agent> diffAgent(Agent current, Agent desired) {
+    return diff(current, desired, AGENT_ATOMIC_PATHS);
+  }
+
+  /**
+   * Patches the agent with only the fields that differ from the current agent.
+   *
+   * @return The updated agent, or the current agent if nothing changed.
+   */
+  public static Agent patchAgent(BusinessCommunications client, Agent current, Agent desired)
+      throws IOException {
+    Diff<Agent> diff = diffAgent(current, desired);
+    if (isSkipped(diff)) {
+      return current;
+    }
+
+    return client.brands().agents().patch(current.getName(), diff.getPayload())
+        .setUpdateMask(diff.getUpdateMask())
+        .execute();
+  }
+
+  /**
+   * Patches the brand with only the fields that differ from the current brand.
+   *
+   * @return The updated brand, or the current brand if nothing changed.
+   */
+  public static Brand patchBrand(BusinessCommunications client, Brand current, Brand desired)
+      throws IOException {
+    Diff<Brand> diff = diff(current, desired, Collections.emptySet());
+    if (isSkipped(diff)) {
+      return current;
+    }
+
+    return client.brands().patch(current.getName(), diff.getPayload())
+        .setUpdateMask(diff.getUpdateMask())
+        .execute();
+  }
+
+  /**
+   * Patches the location with only the fields that differ from the current location.
+   *
+   * @return The updated location, or the current location if nothing changed.
+   */
+  public static Location patchLocation(BusinessCommunications client, Location current,
+      Location desired) throws IOException {
+    Diff<Location> diff = diff(current, desired, Collections.emptySet());
+    if (isSkipped(diff)) {
+      return current;
+    }
+
+    return client.brands().locations().patch(current.getName(), diff.getPayload())
+        .setUpdateMask(diff.getUpdateMask())
+        .execute();
+  }
+
+  /**
+   * Patches the greeting with only the fields that differ from the current greeting.
+   *
+   * @return The updated greeting, or the current greeting if nothing changed.
+   */
+  public static Greeting patchGreeting(BusinessCommunications client, Greeting current,
+      Greeting desired) throws IOException {
+    Diff<Greeting> diff = diff(current, desired, Collections.emptySet());
+    if (isSkipped(diff)) {
+      return current;
+    }
+
+    return client.brands().agents().greetings().patch(current.getName(), diff.getPayload())
+        .setUpdateMask(diff.getUpdateMask())
+        .execute();
+  }
+
+  /**
+   * Returns how many patches were sent and how many were skipped because nothing changed.
+   */
+  public static String summary() {
+    return String.format("patches sent %d  skipped as unchanged %d%n",
+        patchesSent.sum(), patchesSkipped.sum());
+  }
+
+  private static boolean isSkipped(Diff<?> diff) {
+    if (diff.isEmpty()) {
+      patchesSkipped.increment();
+      return true;
+    }
+
+    patchesSent.increment();
+    return false;
+  }
+
+  /**
+   * Copies a resource through JSON. Resources built in code may hold anonymous collection
+   * subclasses (double-brace initialization), which {@code clone()} cannot instantiate.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T extends GenericJson> T copyOf(T resource) {
+    try {
+      return (T) jsonFactory.fromString(jsonFactory.toString(resource), resource.getClass());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void collectChanges(String prefix, Object current, Object desired,
+      Set<String> atomicPaths, boolean topLevel, Set<String> paths) {
+    Map<String, Object> desiredFields = asMap(desired);
+    Map<String, Object> currentFields = asMap(current);
+
+    for (Map.Entry<String, Object> field : desiredFields.entrySet()) {
+      String key = field.getKey();
+      Object desiredValue = field.getValue();
+      if (desiredValue == null || (topLevel && OUTPUT_ONLY_FIELDS.contains(key))) {
+        continue;
+      }
+
+      String path = prefix + key;
+      Object currentValue = currentFields.get(key);
+
+      // Only resource objects are diffed field by field; map entries and lists are units
+      boolean nested = desiredValue instanceof GenericJson && currentValue instanceof GenericJson
+          && !atomicPaths.contains(path);
+      boolean keyedMap = desiredValue instanceof Map && !(desiredValue instanceof GenericJson)
+          && currentValue instanceof Map && !atomicPaths.contains(path);
+
+      if (nested) {
+        collectChanges(path + ".", currentValue, desiredValue, atomicPaths, false, paths);
+      } else if (keyedMap) {
+        Map<String, Object> currentEntries = asMap(currentValue);
+        for (Map.Entry<String, Object> entry : asMap(desiredValue).entrySet()) {
+          if (!deepEquals(currentEntries.get(entry.getKey()), entry.getValue())) {
+            paths.add(path + "." + entry.getKey());
+          }
+        }
+      } else if (!deepEquals(currentValue, desiredValue)) {
+        paths.add(path);
+      }
+    }
+  }
+
+  /**
+   * Removes everything from the payload that is not on, or on the way to, a changed path.
+   */
+  private static void prune(String prefix, Object value, Set<String> paths) {
+    Iterator<Map.Entry<String, Object>> fields = asMap(value).entrySet().iterator();
+    List<String> toClear = new ArrayList<>();
+    while (fields.hasNext()) {
+      Map.Entry<String, Object> field = fields.next();
+      String path = prefix + field.getKey();
+      if (paths.contains(path)) {
+        continue;
+      }
+
+      boolean onChangedPath = false;
+      for (String changed : paths) {
+        if (changed.startsWith(path + ".")) {
+          onChangedPath = true;
+          break;
+        }
+      }
+
+      if (onChangedPath && field.getValue() instanceof Map) {
+        prune(path + ".", field.getValue(), paths);
+      } else {
+        toClear.add(field.getKey());
+      }
+    }
+
+    for (String key : toClear) {
+      clear(value, key);
+    }
+  }
+
+  private static void clear(Object value, String key) {
+    if (value instanceof GenericData
+        && ((GenericData) value).getClassInfo().getFieldInfo(key) != null) {
+      ((GenericData) value).set(key, null);
+    } else {
+      asMap(value).remove(key);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> asMap(Object value) {
+    return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+  }
+
+  private static boolean deepEquals(Object a, Object b) {
+    if (a instanceof Map && b instanceof Map) {
+      Map<String, Object> mapA = asMap(a);
+      Map<String, Object> mapB = asMap(b);
+      if (!mapA.keySet().equals(mapB.keySet())) {
+        return false;
+      }
+      for (Map.Entry<String, Object> entry : mapA.entrySet()) {
+        if (!deepEquals(entry.getValue(), mapB.get(entry.getKey()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    if (a instanceof List && b instanceof List) {
+      List<?> listA = (List<?>) a;
+      List<?> listB = (List<?>) b;
+      if (listA.size() != listB.size()) {
+        return false;
+      }
+      for (int i = 0; i < listA.size(); i++) {
+        if (!deepEquals(listA.get(i), listB.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // Numbers may be parsed as different types, e.g. Integer fields against BigDecimal values
+    if (a instanceof Number && b instanceof Number) {
+      return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+    }
+
+    return Objects.equals(a, b);
+  }
+}
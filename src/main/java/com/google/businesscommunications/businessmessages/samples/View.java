@@ -20,7 +20,17 @@ import java.util.logging.Logger;
 public class View {
   private static final Logger logger = Logger.getLogger(View.class.getName());
 
+  /**
+   * Whether the samples run non-interactively, e.g. as CI smoke tests, set with the
+   * {@code bc.pipeline} system property. Pauses between steps are then skipped.
+   */
+  static final boolean PIPELINE_MODE = Boolean.getBoolean("bc.pipeline");
+
   static void printBreak(int delay) {
+    if (PIPELINE_MODE) {
+      return;
+    }
+
     System.out.println();
     for(int i = 0; i < delay; i++) {
       System.out.print(".");
@@ -33,6 +43,48 @@ public class View {
     System.out.println();
   }
 
+  /**
+   * Pauses after a resource was created. In pipeline mode, instead of a fixed pause, waits only
+   * until the resource can be read back from the API, and stops the sample if it never can.
+   *
+   * @param delay The pause in seconds outside of pipeline mode.
+   * @param name The name of the created resource.
+   * @param getter Reads the resource from the API, bypassing the cache.
+   */
+  static <T> void awaitCreated(int delay, String name, ResourceCache.Loader<T> getter) {
+    if (!PIPELINE_MODE) {
+      printBreak(delay);
+      return;
+    }
+
+    try {
+      ReadinessPoller.awaitReadable(name, getter);
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, Constants.EXCEPTION_WAS_THROWN, e);
+      logger.severe(name + " did not become readable, stopping.");
+
+      System.exit(-1);
+    }
+  }
+
+  /**
+   * Stops the sample when a step did not produce a result, since the following steps depend on
+   * it. The cause has already been logged by the step itself.
+   *
+   * @param result The result of the step.
+   * @param step A short description of the step, e.g. "create the agent".
+   * @return The result, if it is not null.
+   */
+  static <T> T requireResult(T result, String step) {
+    if (result == null) {
+      logger.severe("Unable to " + step + ", stopping.");
+
+      System.exit(-1);
+    }
+
+    return result;
+  }
+
   static void header(String name) {
     System.out.println();
     System.out.println("================== " + name + " ==================");
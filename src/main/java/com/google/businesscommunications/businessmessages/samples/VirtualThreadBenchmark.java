@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.businesscommunications.businessmessages.samples;
+
+import com.google.api.services.businesscommunications.v1.BusinessCommunications;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares running blocking requests on a fixed pool of platform threads against running each
+ * request on its own virtual thread (see {@link TaskExecutors}). Requests go to a
+ * {@link LocalStubServer} that delays every response, so the benchmark shows how many requests
+ * each mode keeps in flight while waiting on the network, and how many OS threads that costs.
+ * <p>
+ * The virtual-thread run is skipped on runtimes older than Java 21.
+ * <p>
+ * Usage: mvn exec:java -Dexec.mainClass="...VirtualThreadBenchmark"
+ * -Dexec.args="[REQUESTS] [CONCURRENCY] [POOL_THREADS] [LATENCY_MS]"
+ */
+public class VirtualThreadBenchmark {
+
+  private static final String APPLICATION_NAME = "virtual-thread-benchmark";
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+    int poolThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+    long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 100;
+
+    // Measure the executors only, not the client-side rate limit
+    for (MethodFamily family : MethodFamily.values()) {
+      RequestThrottler.getInstance().setRequestsPerSecond(family, 0);
+    }
+
+    try (LocalStubServer server = new LocalStubServer(latencyMillis)) {
+      BusinessCommunications client = BusinessCommunicationsClientFactory
+          .newClient(null, APPLICATION_NAME, server.getRootUrl());
+
+      View.header("Executor benchmark (" + requests + " requests, " + latencyMillis
+          + " ms server latency)");
+
+      // Warm up so class loading and JIT do not skew the first measurement
+      run(client, TaskExecutors.Mode.PLATFORM, poolThreads, poolThreads, requests / 10 + 1);
+
+      print(poolThreads + " platform threads", requests,
+          run(client, TaskExecutors.Mode.PLATFORM, poolThreads, poolThreads, requests));
+      print(concurrency + " platform threads", requests,
+          run(client, TaskExecutors.Mode.PLATFORM, concurrency, concurrency, requests));
+
+      if (TaskExecutors.isVirtualThreadSupported()) {
+        print("Virtual threads, " + concurrency + " in flight", requests,
+            run(client, TaskExecutors.Mode.VIRTUAL, concurrency, concurrency, requests));
+      } else {
+        System.out.println("Virtual threads need Java 21 or later, running on "
+            + System.getProperty("java.version") + "; skipped.");
+      }
+    }
+  }
+
+  /**
+   * Sends the requests with at most the given number in flight.
+   *
+   * @return The elapsed nanoseconds, the peak number of live platform threads, and the number of
+   * failed requests, in that order.
+   */
+  private static long[] run(BusinessCommunications client, TaskExecutors.Mode mode,
+      int poolThreads, int concurrency, int requests) throws InterruptedException {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    threads.resetPeakThreadCount();
+
+    Semaphore permits = new Semaphore(concurrency);
+    CountDownLatch done = new CountDownLatch(requests);
+    AtomicInteger failures = new AtomicInteger();
+
+    ExecutorService executor = TaskExecutors.newExecutor(mode, poolThreads, "benchmark-%d");
+    long start = System.nanoTime();
+    try {
+      for (int i = 0; i < requests; i++) {
+        permits.acquire();
+        executor.execute(() -> {
+          try {
+            client.brands().get("brands/stub").execute();
+          } catch (Exception e) {
+            failures.incrementAndGet();
+          } finally {
+            permits.release();
+            done.countDown();
+          }
+        });
+      }
+
+      done.await();
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    return new long[]{System.nanoTime() - start, threads.getPeakThreadCount(), failures.get()};
+  }
+
+  private static void print(String label, int requests, long[] result) {
+    System.out.printf("%-32s %8.1f ms  %8.0f req/s  peak platform threads %5d  failures %d%n",
+        label, result[0] / 1e6, requests * 1e9 / result[0], result[1], result[2]);
+  }
+}